@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2003, 2004  Pascal Essiembre, Essiembre Consultant Inc.
+ *
+ * This file is part of Essiembre ResourceBundle Editor.
+ *
+ * Essiembre ResourceBundle Editor is free software; you can redistribute it
+ * and/or modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * Essiembre ResourceBundle Editor is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Essiembre ResourceBundle Editor; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+package com.essiembre.eclipse.rbe.model.tree;
+
+import java.util.Locale;
+import java.util.Map;
+
+import com.essiembre.eclipse.rbe.model.bundle.Bundle;
+import com.essiembre.eclipse.rbe.model.bundle.BundleEntry;
+import com.essiembre.eclipse.rbe.model.bundle.BundleGroup;
+import com.essiembre.eclipse.rbe.model.tree.updater.FlatKeyTreeUpdater;
+import com.essiembre.eclipse.rbe.model.tree.updater.GroupedKeyTreeUpdater;
+import com.essiembre.eclipse.rbe.model.tree.updater.KeyTreeUpdater;
+
+/**
+ * Compares the heap used by a flat key tree holding one
+ * <code>KeyTreeItem</code> per key, as flat trees used to, with a flat tree
+ * holding its keys in a <code>FlatKeyList</code>.  A grouped tree is
+ * measured for reference.  The key trigram index every tree holds for
+ * filtering is measured on its own and left out of the per key figures.
+ * <p>
+ * Run with the plugin classes and its required plugins on the class path,
+ * optionally giving the number of keys (100,000 by default):
+ * <pre>
+ * java -cp bin:benchmark-bin:... \
+ *     com.essiembre.eclipse.rbe.model.tree.KeyTreeMemoryBenchmark 100000
+ * </pre>
+ * @author Pascal Essiembre (essiembre@users.sourceforge.net)
+ * @version $Author$ $Revision$ $Date$
+ */
+public class KeyTreeMemoryBenchmark {
+
+    /** Number of keys measured by default. */
+    private static final int DEFAULT_KEY_COUNT = 100000;
+
+    /**
+     * Constructor.
+     */
+    private KeyTreeMemoryBenchmark() {
+        super();
+    }
+
+    /**
+     * Runs the benchmark.
+     * @param args optional number of keys
+     */
+    public static void main(String[] args) {
+        int keyCount = args.length > 0
+                ? Integer.parseInt(args[0]) : DEFAULT_KEY_COUNT;
+        BundleGroup bundleGroup = new BundleGroup();
+        bundleGroup.addBundle(Locale.ENGLISH, new Bundle());
+        for (int i = 0; i < keyCount; i++) {
+            bundleGroup.addBundleEntry(Locale.ENGLISH, new BundleEntry(
+                    "module" + (i % 50) + ".section" + (i % 997) + ".key" + i,
+                    "value " + i, null));
+        }
+
+        long indexBytes = measureKeyIndex(bundleGroup);
+        System.out.println("keys: " + keyCount);
+        System.out.println("key index: " + indexBytes / keyCount
+                + " bytes per key");
+        report("flat, one item per key",
+                measureTree(bundleGroup, new ItemPerKeyUpdater()),
+                indexBytes, keyCount);
+        report("flat, key list",
+                measureTree(bundleGroup, new FlatKeyTreeUpdater()),
+                indexBytes, keyCount);
+        report("grouped",
+                measureTree(bundleGroup, new GroupedKeyTreeUpdater(".")),
+                indexBytes, keyCount);
+    }
+
+    /**
+     * Prints the heap used by a tree.
+     * @param name tree name
+     * @param treeBytes heap used by the tree, its key index included
+     * @param indexBytes heap used by the key index
+     * @param keyCount number of keys
+     */
+    private static void report(
+            String name, long treeBytes, long indexBytes, int keyCount) {
+        System.out.println(name + ": " + treeBytes / keyCount
+                + " bytes per key, " + (treeBytes - indexBytes) / keyCount
+                + " without the key index");
+    }
+
+    /**
+     * Measures the heap used by a key tree of a bundle group.
+     * @param bundleGroup the bundle group
+     * @param updater key tree updater
+     * @return heap used, in bytes
+     */
+    private static long measureTree(
+            BundleGroup bundleGroup, KeyTreeUpdater updater) {
+        long before = usedMemory();
+        KeyTree keyTree = new KeyTree(bundleGroup, updater);
+        long after = usedMemory();
+        if (keyTree.getBundleGroup() == null) {
+            // keeps the tree reachable until measured
+            throw new IllegalStateException();
+        }
+        return after - before;
+    }
+
+    /**
+     * Measures the heap used by a key index of all keys of a bundle group.
+     * @param bundleGroup the bundle group
+     * @return heap used, in bytes
+     */
+    private static long measureKeyIndex(BundleGroup bundleGroup) {
+        long before = usedMemory();
+        KeyIndex keyIndex = new KeyIndex();
+        for (String key : bundleGroup.getKeys()) {
+            keyIndex.add(key);
+        }
+        long after = usedMemory();
+        if (!keyIndex.contains(bundleGroup.getKeys().iterator().next())) {
+            throw new IllegalStateException();
+        }
+        return after - before;
+    }
+
+    /**
+     * Gets the heap in use after collecting garbage.
+     * @return heap used, in bytes
+     */
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Flat tree updater creating one item per key, as flat trees were
+     * built before they held their keys in a <code>FlatKeyList</code>.
+     */
+    private static class ItemPerKeyUpdater extends KeyTreeUpdater {
+        /**
+         * @see com.essiembre.eclipse.rbe.model.tree.updater.KeyTreeUpdater
+         *         #addKey(com.essiembre.eclipse.rbe.model.tree.KeyTree,
+         *         java.lang.String)
+         */
+        @Override
+        public void addKey(KeyTree keyTree, String key) {
+            Map<String, KeyTreeItem> keyCache = keyTree.getKeyItemsCache();
+            if (!keyCache.containsKey(key)) {
+                KeyTreeItem item = new KeyTreeItem(keyTree, key, key);
+                item.setParent(keyTree);
+                keyTree.getRootKeyItems().add(item);
+                keyCache.put(key, item);
+            }
+        }
+    }
+}
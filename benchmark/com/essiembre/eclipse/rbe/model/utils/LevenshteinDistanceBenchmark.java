@@ -0,0 +1,229 @@
+/*
+ * Copyright (C) 2003, 2004  Pascal Essiembre, Essiembre Consultant Inc.
+ *
+ * This file is part of Essiembre ResourceBundle Editor.
+ *
+ * Essiembre ResourceBundle Editor is free software; you can redistribute it
+ * and/or modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * Essiembre ResourceBundle Editor is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Essiembre ResourceBundle Editor; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+package com.essiembre.eclipse.rbe.model.utils;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmark comparing the full matrix Levenshtein distance used before
+ * with the banded distance of <code>LevenshteinDistanceAnalyzer</code>.
+ * Each benchmark compares one value with every value of a generated bundle
+ * of UI strings, as selecting a key does when similar values are reported,
+ * and counts the similar values found.  Both count the same values.
+ * <p>
+ * Run with the plugin classes, JMH and the JMH annotation processor on the
+ * class path, for instance:
+ * <pre>
+ * javac -cp bin:jmh-core.jar:jmh-generator-annprocess.jar \
+ *     -d benchmark-bin benchmark/.../LevenshteinDistanceBenchmark.java
+ * java -cp bin:benchmark-bin:jmh-core.jar:jopt-simple.jar:commons-math3.jar \
+ *     org.openjdk.jmh.Main LevenshteinDistanceBenchmark
+ * </pre>
+ * @author Pascal Essiembre (essiembre@users.sourceforge.net)
+ * @version $Author$ $Revision$ $Date$
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LevenshteinDistanceBenchmark {
+
+    /** Words UI strings are made of. */
+    private static final String[] WORDS = {
+        "save", "the", "file", "before", "closing", "cancel", "open",
+        "project", "settings", "error", "could", "not", "load",
+        "resource", "bundle", "please", "enter", "a", "valid", "name",
+        "delete", "selected", "items", "are", "you", "sure", "folder",
+        "new", "copy", "paste", "{0}", "changes", "will", "be", "lost",
+    };
+
+    /** Number of values in the bundle. */
+    @Param({ "5000" })
+    private int valueCount;
+    /** Minimum proximity of similar values. */
+    @Param({ "0.5", "0.75", "0.9" })
+    private double precision;
+
+    /** Lower case values of the bundle. */
+    private String[] values;
+    /** Lower case values compared with the bundle, one per call. */
+    private String[] selectedValues;
+    /** Index of the next selected value. */
+    private int selection;
+
+    /**
+     * Generates the bundle values: sentences of one to six words, or up to
+     * twelve for one value out of five, some with a trailing "s" or "...",
+     * and some repeated with a one character typo.
+     */
+    @Setup
+    public void setUp() {
+        Random random = new Random(2);
+        values = new String[valueCount];
+        for (int i = 0; i < valueCount; i++) {
+            if (i > 0 && random.nextInt(10) == 0) {
+                // a near duplicate of an earlier value
+                StringBuilder value = new StringBuilder(
+                        values[random.nextInt(i)]);
+                value.setCharAt(random.nextInt(value.length()),
+                        (char) ('a' + random.nextInt(26)));
+                values[i] = value.toString();
+                continue;
+            }
+            int wordCount = 1 + random.nextInt(
+                    random.nextInt(5) == 0 ? 12 : 6);
+            StringBuilder value = new StringBuilder();
+            for (int j = 0; j < wordCount; j++) {
+                if (j > 0) {
+                    value.append(' ');
+                }
+                value.append(WORDS[random.nextInt(WORDS.length)]);
+            }
+            if (random.nextInt(3) == 0) {
+                value.append(random.nextBoolean() ? "s" : "...");
+            }
+            values[i] = value.toString();
+        }
+        selectedValues = new String[64];
+        for (int i = 0; i < selectedValues.length; i++) {
+            selectedValues[i] = values[random.nextInt(valueCount)];
+        }
+    }
+
+    /**
+     * Counts similar values with the full matrix distance, as values were
+     * compared before: <code>analyse(value, selected) &gt;= precision</code>.
+     * @return number of similar values
+     */
+    @Benchmark
+    public int fullMatrix() {
+        String selected = nextSelectedValue();
+        int count = 0;
+        for (String value : values) {
+            if (MatrixAnalyzer.analyse(value, selected) >= precision) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Counts similar values with the banded distance of
+     * <code>LevenshteinDistanceAnalyzer.isSimilar</code>.
+     * @return number of similar values
+     */
+    @Benchmark
+    public int banded() {
+        String selected = nextSelectedValue();
+        ProximityAnalyzer analyzer = LevenshteinDistanceAnalyzer.getInstance();
+        int count = 0;
+        for (String value : values) {
+            if (analyzer.isSimilar(value, selected, precision)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Gets the value to compare with the bundle on the next call.
+     * @return a selected value
+     */
+    private String nextSelectedValue() {
+        selection = (selection + 1) % selectedValues.length;
+        return selectedValues[selection];
+    }
+
+    /**
+     * Levenshtein distance filling a whole matrix for every comparison, as
+     * <code>LevenshteinDistanceAnalyzer</code> did before its distance was
+     * banded.
+     */
+    private static final class MatrixAnalyzer {
+
+        /**
+         * Constructor.
+         */
+        private MatrixAnalyzer() {
+            super();
+        }
+
+        /**
+         * Gets the proximity of two strings.
+         * @param str1 first string
+         * @param str2 second string
+         * @return proximity, between 0 and 1
+         */
+        private static double analyse(String str1, String str2) {
+            int maxLength = Math.max(str1.length(), str2.length());
+            double distance = distance(str1, str2);
+            return 1d - (distance / maxLength);
+        }
+
+        /**
+         * Computes the distance of two strings.
+         * @param s source string
+         * @param t target string
+         * @return distance
+         */
+        private static int distance(String s, String t) {
+            int n = s.length();
+            int m = t.length();
+            if (n == 0) {
+                return m;
+            }
+            if (m == 0) {
+                return n;
+            }
+            int[][] d = new int[n + 1][m + 1];
+            for (int i = 0; i <= n; i++) {
+                d[i][0] = i;
+            }
+            for (int j = 0; j <= m; j++) {
+                d[0][j] = j;
+            }
+            for (int i = 1; i <= n; i++) {
+                char s_i = s.charAt(i - 1);
+                for (int j = 1; j <= m; j++) {
+                    int cost = s_i == t.charAt(j - 1) ? 0 : 1;
+                    d[i][j] = Math.min(Math.min(d[i - 1][j] + 1,
+                            d[i][j - 1] + 1), d[i - 1][j - 1] + cost);
+                }
+            }
+            return d[n][m];
+        }
+    }
+}
@@ -21,7 +21,9 @@
 package com.essiembre.eclipse.rbe.model;
 
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 //import org.eclipse.core.internal.runtime.ListenerList; >= Eclipse 3.2
 //import org.eclipse.core.runtime.ListenerList;           < Eclipse 3.2
@@ -40,12 +42,22 @@ public abstract class Model {
      */
     /** Listeners for this object. */
     private final List<IDeltaListener> listeners = new ArrayList<IDeltaListener>();
+
+    /** How many batches are currently opened on this object. */
+    private int batchDepth;
+    /** Add, remove and modify events held until the batch ends. */
+    private final Set<PendingEvent> pendingEvents =
+            new LinkedHashSet<PendingEvent>();
     
     /**
      * Fires an "add" event.
      * @param added object added
      */
     protected void fireAdd(Object added) {
+        if (batchDepth > 0) {
+            pendingEvents.add(new PendingEvent(PendingEvent.ADD, added));
+            return;
+        }
         for (IDeltaListener listener : listeners) {
             listener.add(new DeltaEvent(added));
         }
@@ -56,6 +68,10 @@ public abstract class Model {
      * @param removed object removed
      */
     protected void fireRemove(Object removed) {
+        if (batchDepth > 0) {
+            pendingEvents.add(new PendingEvent(PendingEvent.REMOVE, removed));
+            return;
+        }
         for (IDeltaListener listener : listeners) {
             listener.remove(new DeltaEvent(removed));
         }
@@ -66,6 +82,10 @@ public abstract class Model {
      * @param modified object modified
      */
     protected void fireModify(Object modified) {
+        if (batchDepth > 0) {
+            pendingEvents.add(new PendingEvent(PendingEvent.MODIFY, modified));
+            return;
+        }
         for (IDeltaListener listener : listeners) {
             listener.modify(new DeltaEvent(modified));
         }
@@ -81,6 +101,40 @@ public abstract class Model {
         }
     }
 
+    /**
+     * Starts a batch of changes.  Until the matching {@link #endBatch()},
+     * "add", "remove" and "modify" events are held back instead of being 
+     * fired, and identical events (same kind, same object) are fired only
+     * once.  Batches can be nested; events are fired when the outermost
+     * batch ends.  Always call {@link #endBatch()} in a 
+     * <code>finally</code> block.
+     */
+    public void beginBatch() {
+        batchDepth++;
+    }
+
+    /**
+     * Ends a batch of changes started with {@link #beginBatch()}, firing
+     * held back events in the order they first occurred when this is the
+     * outermost batch.
+     */
+    public void endBatch() {
+        if (batchDepth == 0 || --batchDepth > 0) {
+            return;
+        }
+        List<PendingEvent> events = new ArrayList<PendingEvent>(pendingEvents);
+        pendingEvents.clear();
+        for (PendingEvent event : events) {
+            if (event.kind == PendingEvent.ADD) {
+                fireAdd(event.receiver);
+            } else if (event.kind == PendingEvent.REMOVE) {
+                fireRemove(event.receiver);
+            } else {
+                fireModify(event.receiver);
+            }
+        }
+    }
+
     /**
      * Adds a listener to this instance.
      * @param listener listener to add
@@ -95,4 +149,33 @@ public abstract class Model {
     public void removeListener(IDeltaListener listener) {
         listeners.remove(listener);
     }
+
+    /**
+     * Event held back during a batch.  Two pending events are equal when
+     * they are of the same kind and about the very same object.
+     */
+    private static final class PendingEvent {
+        /*default*/ static final int ADD = 0;
+        /*default*/ static final int REMOVE = 1;
+        /*default*/ static final int MODIFY = 2;
+        /*default*/ final int kind;
+        /*default*/ final Object receiver;
+        /*default*/ PendingEvent(int kind, Object receiver) {
+            super();
+            this.kind = kind;
+            this.receiver = receiver;
+        }
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof PendingEvent)) {
+                return false;
+            }
+            PendingEvent event = (PendingEvent) obj;
+            return kind == event.kind && receiver == event.receiver;
+        }
+        @Override
+        public int hashCode() {
+            return kind * 31 + System.identityHashCode(receiver);
+        }
+    }
 }
@@ -21,6 +21,7 @@
 package com.essiembre.eclipse.rbe.model.bundle;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -30,6 +31,9 @@ import java.util.Set;
 import java.util.TreeSet;
 
 import com.essiembre.eclipse.rbe.model.Model;
+import com.essiembre.eclipse.rbe.model.utils.LevenshteinDistanceAnalyzer;
+import com.essiembre.eclipse.rbe.model.utils.MinHashIndex;
+import com.essiembre.eclipse.rbe.model.utils.ProximityAnalyzer;
 
 
 /**
@@ -39,12 +43,27 @@ import com.essiembre.eclipse.rbe.model.Model;
  */
 public class Bundle extends Model implements IBundleVisitable {
 
+    /** Number of entries from which similar values are looked up in the
+     *  similarity index rather than among all entries. */
+    private static final int SIMILARITY_INDEX_MIN_SIZE = 1000;
+    /** Lowest precision at which similar values are looked up in the
+     *  similarity index.  Below it, the index misses too many of them. */
+    private static final double SIMILARITY_INDEX_MIN_PRECISION = 0.75d;
+
     /** Bundle head comment. */
     private String comment;
     /** Bundle locale. */
     private Locale locale;
     /** Bundle entries (key=key value=BundleEntry). */
     private final Map<String, BundleEntry> entries = new HashMap<String, BundleEntry>();
+    /** Bundle entries by value, empty values excluded
+     *  (key=value value=BundleEntry list). */
+    private final Map<String, List<BundleEntry>> valueEntries =
+            new HashMap<String, List<BundleEntry>>();
+    /** Index of lower case values by similarity, built when first needed. */
+    private MinHashIndex similarityIndex;
+    /** Count of value index changes, to detect them during index builds. */
+    private int valueChangeCount;
     /** Bundle group (parent). */
     private BundleGroup bundleGroup;
     
@@ -104,9 +123,162 @@ public class Bundle extends Model implements IBundleVisitable {
      * @return the matching bundle entry, or <code>null</code>
      */
     public BundleEntry getEntry(String key) {
-        return entries.get(key);
+        synchronized (entries) {
+            return entries.get(key);
+        }
     }
     
+    /**
+     * Gets the other bundle entries having the same value as the given
+     * entry.  Entries with an empty value have no duplicates.
+     * @param entry the bundle entry to match, or <code>null</code>
+     * @return bundle entries with duplicate values (never <code>null</code>)
+     */
+    public Collection<BundleEntry> getDuplicates(BundleEntry entry) {
+        Collection<BundleEntry> duplicates = new ArrayList<BundleEntry>();
+        if (entry == null || entry.getValue() == null) {
+            return duplicates;
+        }
+        synchronized (entries) {
+            List<BundleEntry> sameValueEntries =
+                    valueEntries.get(entry.getValue());
+            if (sameValueEntries != null) {
+                for (BundleEntry sameValueEntry : sameValueEntries) {
+                    if (!sameValueEntry.getKey().equals(entry.getKey())) {
+                        duplicates.add(sameValueEntry);
+                    }
+                }
+            }
+        }
+        return duplicates;
+    }
+
+    /**
+     * Gets all groups of bundle entries sharing the same non-empty value.
+     * @return lists of two or more bundle entries having the same value
+     */
+    public Collection<List<BundleEntry>> getDuplicateClusters() {
+        Collection<List<BundleEntry>> clusters =
+                new ArrayList<List<BundleEntry>>();
+        synchronized (entries) {
+            for (List<BundleEntry> sameValueEntries : valueEntries.values()) {
+                if (sameValueEntries.size() > 1) {
+                    clusters.add(new ArrayList<BundleEntry>(sameValueEntries));
+                }
+            }
+        }
+        return clusters;
+    }
+
+    /**
+     * Gets the bundle entries which may have a value similar to the value
+     * of the given entry, to be compared with it by a proximity analyzer.
+     * Bundles of 1,000 entries or more compared by Levenshtein distance at
+     * a precision of 0.75 or more only return the entries found by a
+     * similarity index, which may miss a few entries sharing few character
+     * sequences with the given one.  Otherwise, all entries are returned:
+     * the index misses many similar values at lower precisions, and word
+     * counts do not follow character sequences.
+     * @param entry the bundle entry to match
+     * @param analyzer proximity analyzer the entries are compared with
+     * @param precision minimum precision of similar values
+     * @return candidate bundle entries (never <code>null</code>)
+     */
+    public Collection<BundleEntry> getSimilarCandidates(BundleEntry entry,
+            ProximityAnalyzer analyzer, double precision) {
+        synchronized (entries) {
+            if (entries.size() < SIMILARITY_INDEX_MIN_SIZE
+                    || !(analyzer instanceof LevenshteinDistanceAnalyzer)
+                    || precision < SIMILARITY_INDEX_MIN_PRECISION) {
+                return new ArrayList<BundleEntry>(entries.values());
+            }
+        }
+        Set<String> keys = getSimilarityIndex().getCandidates(
+                entry.getValue().toLowerCase());
+        synchronized (entries) {
+            return getEntries(keys);
+        }
+    }
+
+    /**
+     * Gets groups of bundle entries which may have similar values, as
+     * found by a similarity index.  An entry may belong to several groups,
+     * and entries of a group still have to be compared by a proximity
+     * analyzer.  Entries sharing few character sequences with all others
+     * may be left out even if similar to some.
+     * @return groups of two or more bundle entries
+     */
+    public Collection<Collection<BundleEntry>> getSimilarCandidateClusters() {
+        Collection<Collection<BundleEntry>> clusters =
+                new ArrayList<Collection<BundleEntry>>();
+        Collection<Set<String>> keyClusters =
+                getSimilarityIndex().getClusters();
+        synchronized (entries) {
+            for (Set<String> keys : keyClusters) {
+                clusters.add(getEntries(keys));
+            }
+        }
+        return clusters;
+    }
+
+    /**
+     * Gets the similarity index, building it the first time.  The index
+     * is built outside of the entries lock from a copy of the entries, and
+     * built again if values changed in the meantime.  Callers must not
+     * hold the entries lock.
+     * @return the similarity index
+     */
+    private MinHashIndex getSimilarityIndex() {
+        while (true) {
+            Collection<BundleEntry> entriesToIndex;
+            int changeCount;
+            synchronized (entries) {
+                if (similarityIndex != null) {
+                    return similarityIndex;
+                }
+                entriesToIndex = new ArrayList<BundleEntry>(entries.values());
+                changeCount = valueChangeCount;
+            }
+            MinHashIndex index = new MinHashIndex();
+            for (BundleEntry entry : entriesToIndex) {
+                index.add(entry.getKey(), entry.getValue().toLowerCase());
+            }
+            synchronized (entries) {
+                if (similarityIndex == null
+                        && valueChangeCount == changeCount) {
+                    similarityIndex = index;
+                }
+                if (similarityIndex != null) {
+                    return similarityIndex;
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the bundle entries having the given keys.
+     * @param keys bundle entry keys
+     * @return bundle entries found
+     */
+    private Collection<BundleEntry> getEntries(Collection<String> keys) {
+        Collection<BundleEntry> keyEntries = new ArrayList<BundleEntry>();
+        for (String key : keys) {
+            BundleEntry entry = entries.get(key);
+            if (entry != null) {
+                keyEntries.add(entry);
+            }
+        }
+        return keyEntries;
+    }
+
+    /**
+     * Gets the number of entries in this bundle.
+     * @return number of entries
+     */
+    public int getSize() {
+        return entries.size();
+    }
+
     /**
      * Adds a bundle entry to this bundle.
      * @param entry the bundle entry to add
@@ -115,15 +287,26 @@ public class Bundle extends Model implements IBundleVisitable {
         BundleEntry oldEntry = entries.get(entry.getKey());
         if (oldEntry != null) {
             if (!oldEntry.equals(entry)) {
-                entries.put(entry.getKey(), entry);
-                entry.setBundle(this);
-                entry.setLocale(locale);
+                // entries are complete before other threads can see them
+                synchronized (entries) {
+                    entry.setBundle(this);
+                    entry.setLocale(locale);
+                    entries.put(entry.getKey(), entry);
+                    unindexValue(oldEntry);
+                    indexValue(entry);
+                }
                 fireModify(oldEntry);
             }
         } else if (entry.getKey().trim().length() > 0) {
-            entries.put(entry.getKey(), entry);
-            entry.setBundle(this);
-            entry.setLocale(locale);
+            synchronized (entries) {
+                entry.setBundle(this);
+                entry.setLocale(locale);
+                entries.put(entry.getKey(), entry);
+                indexValue(entry);
+            }
+            if (bundleGroup != null) {
+                bundleGroup.keyAdded(entry.getKey());
+            }
             fireAdd(entry);
         }
     }
@@ -133,10 +316,57 @@ public class Bundle extends Model implements IBundleVisitable {
      * @param entry the bundle entry to remove
      */
     protected void removeEntry(BundleEntry entry) {
-        BundleEntry removedEntry = entries.get(entry.getKey());
-        entries.remove(entry.getKey());
+        BundleEntry removedEntry;
+        synchronized (entries) {
+            removedEntry = entries.remove(entry.getKey());
+            if (removedEntry != null) {
+                unindexValue(removedEntry);
+            }
+        }
+        if (removedEntry != null && bundleGroup != null) {
+            bundleGroup.keyRemoved(removedEntry.getKey());
+        }
         fireRemove(removedEntry);
     }
+
+    /**
+     * Adds a bundle entry to the value indexes.
+     * @param entry the bundle entry to index
+     */
+    private void indexValue(BundleEntry entry) {
+        valueChangeCount++;
+        if (similarityIndex != null) {
+            similarityIndex.add(entry.getKey(), entry.getValue().toLowerCase());
+        }
+        String value = entry.getValue();
+        if (value == null || value.length() == 0) {
+            return;
+        }
+        List<BundleEntry> sameValueEntries = valueEntries.get(value);
+        if (sameValueEntries == null) {
+            sameValueEntries = new ArrayList<BundleEntry>(2);
+            valueEntries.put(value, sameValueEntries);
+        }
+        sameValueEntries.add(entry);
+    }
+
+    /**
+     * Removes a bundle entry from the value indexes.
+     * @param entry the bundle entry to remove
+     */
+    private void unindexValue(BundleEntry entry) {
+        valueChangeCount++;
+        if (similarityIndex != null) {
+            similarityIndex.remove(entry.getKey());
+        }
+        List<BundleEntry> sameValueEntries = valueEntries.get(entry.getValue());
+        if (sameValueEntries != null) {
+            sameValueEntries.remove(entry);
+            if (sameValueEntries.isEmpty()) {
+                valueEntries.remove(entry.getValue());
+            }
+        }
+    }
     
     /**
      * Renames a bundle entry key.
@@ -200,6 +430,17 @@ public class Bundle extends Model implements IBundleVisitable {
         return entries.values().iterator();
     }
 
+    /**
+     * Gets a copy of the bundle entries, which can be iterated from any
+     * thread while this bundle changes.
+     * @return bundle entries
+     */
+    public Collection<BundleEntry> getEntrySnapshot() {
+        synchronized (entries) {
+            return new ArrayList<BundleEntry>(entries.values());
+        }
+    }
+
     /**
      * Gets the bundle group (parent) associated with this bundle.
      * @return a bundle group
@@ -232,19 +473,19 @@ public class Bundle extends Model implements IBundleVisitable {
      */    
     protected void copyFrom(Bundle bundle) {
         setComment(bundle.getComment());
-        // Remove deleted entries
+        // Remove deleted entries, firing events outside of the lock
+        List<BundleEntry> entriesToRemove = new ArrayList<BundleEntry>();
         synchronized (entries) {
-            List<BundleEntry> entriesToRemove = new ArrayList<BundleEntry>();
             for (Iterator<BundleEntry> iter = iterator(); iter.hasNext();) {
                 BundleEntry localEntry = iter.next();
                 if (bundle.getEntry(localEntry.getKey()) == null) {
                     entriesToRemove.add(localEntry);
                 }
             }    
-            for (BundleEntry entry : entriesToRemove) {
-                removeEntry(entry);
-            }        
         }
+        for (BundleEntry entry : entriesToRemove) {
+            removeEntry(entry);
+        }        
         
         // Add existing/new entries
         for (Iterator<BundleEntry> iter = bundle.iterator(); iter.hasNext();) {
@@ -20,7 +20,11 @@
  */
 package com.essiembre.eclipse.rbe.model.bundle;
 
+import java.util.HashMap;
 import java.util.Locale;
+import java.util.Map;
+
+import com.essiembre.eclipse.rbe.model.utils.WordBag;
 
 /**
  * Represents an entry in a properties file.
@@ -41,6 +45,8 @@ public final class BundleEntry implements IBundleVisitable {
     private String value;
     /** Associated bundle (parent). */
     private Bundle bundle;
+    /** Lower case words of the value, split when first needed. */
+    private WordBag words;
 
     /**
      * Constructor.  Keys and value are <code>null</code> safe.
@@ -111,6 +117,28 @@ public final class BundleEntry implements IBundleVisitable {
         return value;
     }
 
+    /**
+     * Gets the words of the lower case value.  They are split once, the
+     * value of an entry never changing, with the word identifiers of the
+     * bundle group so they can be compared with other entries of the group.
+     * @return words of the value
+     */
+    public WordBag getWords() {
+        Map<String, Integer> wordIdTable = null;
+        if (bundle != null && bundle.getBundleGroup() != null) {
+            wordIdTable = bundle.getBundleGroup().getWordIdTable();
+        }
+        WordBag valueWords = words;
+        if (valueWords == null || valueWords.getWordIdTable() != wordIdTable) {
+            if (wordIdTable == null) {
+                wordIdTable = new HashMap<String, Integer>();
+            }
+            valueWords = new WordBag(value.toLowerCase(), wordIdTable);
+            words = valueWords;
+        }
+        return valueWords;
+    }
+
     /**
      * Gets the "commented" attribute.
      * @return <code>true</code> if this entry is commented out.
@@ -0,0 +1,402 @@
+/*
+ * Copyright (C) 2003, 2004  Pascal Essiembre, Essiembre Consultant Inc.
+ * 
+ * This file is part of Essiembre ResourceBundle Editor.
+ * 
+ * Essiembre ResourceBundle Editor is free software; you can redistribute it 
+ * and/or modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * Essiembre ResourceBundle Editor is distributed in the hope that it will be 
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Essiembre ResourceBundle Editor; if not, write to the 
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330, 
+ * Boston, MA  02111-1307  USA
+ */
+package com.essiembre.eclipse.rbe.model.bundle;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+
+/**
+ * Finds text in bundle entry values, the way a text editor find/replace
+ * does in a document.  The searched text is compiled once: plain
+ * case-sensitive searches use <code>String</code> methods, other searches
+ * a precompiled <code>Pattern</code>.  Bundle entries are searched as a
+ * sequence (see {@link #getEntries(BundleGroup, Collection, List)}), which 
+ * can be done on any thread as entries are not modified.
+ * @author Pascal Essiembre (essiembre@users.sourceforge.net)
+ * @version $Author$ $Revision$ $Date$
+ */
+public class BundleFinder {
+
+    /** Number of entries searched between two cancellation checks. */
+    private static final int CHECK_INTERVAL = 256;
+
+    /** Text to find. */
+    private final String findString;
+    /** Whether case matters. */
+    private final boolean caseSensitive;
+    /** Whether to only find whole words. */
+    private final boolean wholeWord;
+    /** Whether the text to find is a regular expression. */
+    private final boolean regExSearch;
+    /** Pattern to find, or <code>null</code> for a plain search. */
+    private final Pattern pattern;
+
+    /**
+     * Constructor.
+     * @param findString text to find
+     * @param caseSensitive whether case matters
+     * @param wholeWord whether to only find whole words (ignored for
+     *        regular expressions)
+     * @param regExSearch whether the text to find is a regular expression
+     * @throws java.util.regex.PatternSyntaxException if the regular 
+     *         expression is invalid
+     */
+    public BundleFinder(String findString, boolean caseSensitive, 
+            boolean wholeWord, boolean regExSearch) {
+        super();
+        this.findString = findString;
+        this.caseSensitive = caseSensitive;
+        this.wholeWord = wholeWord;
+        this.regExSearch = regExSearch;
+        int flags = Pattern.MULTILINE;
+        if (!caseSensitive) {
+            flags |= Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE;
+        }
+        if (regExSearch) {
+            pattern = Pattern.compile(findString, flags);
+        } else if (wholeWord) {
+            pattern = Pattern.compile(
+                    "\\b" + Pattern.quote(findString) + "\\b", flags); //$NON-NLS-1$ //$NON-NLS-2$
+        } else if (!caseSensitive) {
+            pattern = Pattern.compile(findString, flags | Pattern.LITERAL);
+        } else {
+            pattern = null;
+        }
+    }
+
+    /**
+     * Gets whether this finder looks for plain, case-sensitive text, in
+     * which case matching values all contain the text to find.
+     * @return <code>true</code> for a plain search
+     */
+    public boolean isPlainSearch() {
+        return pattern == null;
+    }
+
+    /**
+     * Gets the text to find.
+     * @return text to find
+     */
+    public String getFindString() {
+        return findString;
+    }
+
+    /**
+     * Gets whether case matters.
+     * @return <code>true</code> if case matters
+     */
+    public boolean isCaseSensitive() {
+        return caseSensitive;
+    }
+
+    /**
+     * Gets whether only whole words are found.
+     * @return <code>true</code> if only whole words are found
+     */
+    public boolean isWholeWord() {
+        return wholeWord;
+    }
+
+    /**
+     * Gets whether the text to find is a regular expression.
+     * @return <code>true</code> for a regular expression
+     */
+    public boolean isRegExSearch() {
+        return regExSearch;
+    }
+
+    /**
+     * Finds the next match in a text.
+     * @param text the text to search
+     * @param offset where to start searching
+     * @param searchForward <code>true</code> to find the first match
+     *        starting at or after <code>offset</code>, <code>false</code>
+     *        for the last match starting at or before it
+     * @return the match (without entry), or <code>null</code> if none
+     */
+    public Match find(String text, int offset, boolean searchForward) {
+        return find(null, text, offset, searchForward);
+    }
+
+    /**
+     * Finds the next match in a sequence of bundle entries, going around
+     * the sequence once.
+     * @param entries the entries to search
+     * @param startIndex index of the first entry to search
+     * @param searchForward <code>true</code> to search entries and
+     *        values from start to end
+     * @param monitor progress monitor checked for cancellation, or
+     *        <code>null</code>
+     * @return the match, or <code>null</code> if none or cancelled
+     */
+    public Match findNext(List<BundleEntry> entries, int startIndex, 
+            boolean searchForward, IProgressMonitor monitor) {
+        int size = entries.size();
+        for (int i = 0; i < size; i++) {
+            if (monitor != null && i % CHECK_INTERVAL == 0
+                    && monitor.isCanceled()) {
+                return null;
+            }
+            int index = searchForward ? startIndex + i : startIndex - i;
+            BundleEntry entry = entries.get(((index % size) + size) % size);
+            String value = entry.getValue();
+            Match match = find(entry, value, 
+                    searchForward ? 0 : value.length(), searchForward);
+            if (match != null) {
+                return match;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Finds all matches in a sequence of bundle entries, in sequence order.
+     * @param entries the entries to search
+     * @param monitor progress monitor checked for cancellation, or
+     *        <code>null</code>
+     * @return the matches, or <code>null</code> if cancelled
+     */
+    public List<Match> findAll(
+            List<BundleEntry> entries, IProgressMonitor monitor) {
+        List<Match> matches = new ArrayList<Match>();
+        for (int i = 0; i < entries.size(); i++) {
+            if (monitor != null && i % CHECK_INTERVAL == 0
+                    && monitor.isCanceled()) {
+                return null;
+            }
+            BundleEntry entry = entries.get(i);
+            String value = entry.getValue();
+            int offset = 0;
+            Match match;
+            while ((match = find(entry, value, offset, true)) != null) {
+                matches.add(match);
+                offset = match.getOffset() + Math.max(match.getLength(), 1);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Gets the text replacing the match found at the given offset.
+     * @param text the text holding the match
+     * @param offset the match offset
+     * @param replaceString the replacement
+     * @param regExReplace whether the replacement may refer to groups
+     *        of a regular expression match
+     * @return replacement text
+     */
+    public String getReplacement(String text, int offset, 
+            String replaceString, boolean regExReplace) {
+        if (!regExReplace || pattern == null) {
+            return replaceString;
+        }
+        Matcher matcher = pattern.matcher(text);
+        if (!matcher.find(offset) || matcher.start() != offset) {
+            return replaceString;
+        }
+        // the matcher was reset by find(int): only the match start is 
+        // appended before the replacement
+        StringBuffer buffer = new StringBuffer();
+        matcher.appendReplacement(buffer, replaceString);
+        return buffer.substring(offset);
+    }
+
+    /**
+     * Replaces matches in a text.
+     * @param text the text holding the matches
+     * @param matches matches found in the text, in text order
+     * @param replaceString the replacement
+     * @param regExReplace whether the replacement may refer to groups
+     *        of a regular expression match
+     * @return the text with matches replaced
+     */
+    public String replace(String text, List<Match> matches, 
+            String replaceString, boolean regExReplace) {
+        StringBuilder buf = new StringBuilder(text.length());
+        int end = 0;
+        for (Match match : matches) {
+            buf.append(text, end, match.getOffset());
+            buf.append(getReplacement(
+                    text, match.getOffset(), replaceString, regExReplace));
+            end = match.getOffset() + match.getLength();
+        }
+        buf.append(text, end, text.length());
+        return buf.toString();
+    }
+
+    /**
+     * Gets the sequence of bundle entries to search: entries of each key
+     * in the given key order, then in the given locale order.  Missing
+     * entries are skipped.
+     * @param bundleGroup the bundle group holding the entries
+     * @param keys the keys of the entries
+     * @param locales the locales of the entries
+     * @return bundle entries
+     */
+    public static List<BundleEntry> getEntries(BundleGroup bundleGroup, 
+            Collection<String> keys, List<Locale> locales) {
+        List<Bundle> bundles = new ArrayList<Bundle>(locales.size());
+        for (Locale locale : locales) {
+            Bundle bundle = bundleGroup.getBundle(locale);
+            if (bundle != null) {
+                bundles.add(bundle);
+            }
+        }
+        List<BundleEntry> entries = new ArrayList<BundleEntry>();
+        for (String key : keys) {
+            for (Bundle bundle : bundles) {
+                BundleEntry entry = bundle.getEntry(key);
+                if (entry != null) {
+                    entries.add(entry);
+                }
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Gets the index of the first entry of a sequence built with 
+     * {@link #getEntries(BundleGroup, Collection, List)} coming after the
+     * given key and locale.
+     * @param entries the sequence of entries, sorted by key
+     * @param key the key
+     * @param locale the locale
+     * @param locales the locales the sequence was built with
+     * @return index of the first following entry (may be the sequence size)
+     */
+    public static int indexAfter(List<BundleEntry> entries, 
+            String key, Locale locale, List<Locale> locales) {
+        int localeIndex = locales.indexOf(locale);
+        int low = 0;
+        int high = entries.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            BundleEntry entry = entries.get(middle);
+            int diff = entry.getKey().compareTo(key);
+            if (diff == 0) {
+                diff = locales.indexOf(entry.getBundle().getLocale())
+                        - localeIndex;
+            }
+            if (diff <= 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Finds the next match in a text.
+     * @param entry the entry holding the text, or <code>null</code>
+     * @param text the text to search
+     * @param offset where to start searching
+     * @param searchForward search direction
+     * @return the match, or <code>null</code> if none
+     */
+    private Match find(BundleEntry entry, String text, int offset, 
+            boolean searchForward) {
+        if (findString.length() == 0 || offset < 0 
+                || offset > text.length()) {
+            return null;
+        }
+        if (pattern == null) {
+            int index = searchForward ? text.indexOf(findString, offset)
+                    : text.lastIndexOf(findString, offset);
+            if (index == -1) {
+                return null;
+            }
+            return new Match(entry, index, findString.length());
+        }
+        Matcher matcher = pattern.matcher(text);
+        if (searchForward) {
+            if (!matcher.find(offset)) {
+                return null;
+            }
+            return new Match(
+                    entry, matcher.start(), matcher.end() - matcher.start());
+        }
+        Match match = null;
+        int start = 0;
+        while (start <= offset && matcher.find(start)
+                && matcher.start() <= offset) {
+            match = new Match(
+                    entry, matcher.start(), matcher.end() - matcher.start());
+            start = matcher.start() + 1;
+        }
+        return match;
+    }
+
+    /**
+     * Text found in a bundle entry value.
+     */
+    public static final class Match {
+        /** Entry holding the match. */
+        private final BundleEntry entry;
+        /** Match offset in the entry value. */
+        private final int offset;
+        /** Match length. */
+        private final int length;
+
+        /**
+         * Constructor.
+         * @param entry entry holding the match
+         * @param offset match offset
+         * @param length match length
+         */
+        /*default*/ Match(BundleEntry entry, int offset, int length) {
+            super();
+            this.entry = entry;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        /**
+         * Gets the entry holding the match.
+         * @return bundle entry, or <code>null</code> for a match in a text
+         */
+        public BundleEntry getEntry() {
+            return entry;
+        }
+
+        /**
+         * Gets the match offset.
+         * @return offset
+         */
+        public int getOffset() {
+            return offset;
+        }
+
+        /**
+         * Gets the match length.
+         * @return length
+         */
+        public int getLength() {
+            return length;
+        }
+    }
+}
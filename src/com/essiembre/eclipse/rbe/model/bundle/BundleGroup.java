@@ -22,11 +22,13 @@ package com.essiembre.eclipse.rbe.model.bundle;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Locale;
 import java.util.Map;
-import java.util.Set;
+import java.util.NavigableSet;
 import java.util.SortedSet;
 import java.util.TreeSet;
 
@@ -43,9 +45,16 @@ public class BundleGroup extends Model implements IBundleVisitable {
     /** Bundles forming the group (key=Locale; value=Bundle). */
     private final Map<Locale, Bundle> bundles = new HashMap<Locale, Bundle>();
     
-    //TODO tentative:
-    private final SortedSet<String> keys = new TreeSet<String>();
-//	private final List<String> keys = new LinkedList<String>();
+    /** Sorted keys found in at least one bundle of this group. */
+    private final NavigableSet<String> keys = new TreeSet<String>();
+    /** Read-only view of the keys. */
+    private final SortedSet<String> readOnlyKeys =
+            Collections.unmodifiableSortedSet(keys);
+    /** Number of bundles holding each key (key=key; value=count). */
+    private final Map<String, int[]> keyCounts = new HashMap<String, int[]>();
+    /** Identifiers given to the words of values, to compare them. */
+    private final Map<String, Integer> wordIdTable =
+            new HashMap<String, Integer>();
     
     /**
      * Constructor.
@@ -54,6 +63,15 @@ public class BundleGroup extends Model implements IBundleVisitable {
         super();
     }
 
+    /**
+     * Gets the identifiers given to the words of the values of this group,
+     * shared by the <code>WordBag</code> of its bundle entries.
+     * @return identifiers given to words (key=word; value=identifier)
+     */
+    public Map<String, Integer> getWordIdTable() {
+        return wordIdTable;
+    }
+
     /**
      * @see IBundleVisitable#accept(IBundleVisitor, Object)
      */
@@ -83,18 +101,55 @@ public class BundleGroup extends Model implements IBundleVisitable {
      * @param bundle bundle to add
      */
     public void addBundle(Locale locale, Bundle bundle) {
+        if (putBundle(locale, bundle)) {
+            fireAdd(bundle);
+        } else {
+            fireModify(bundle);
+        }
+    }
+
+    /**
+     * Adds several bundles to this group.  Listeners are notified once
+     * all bundles were added, for each bundle in the map iteration order.
+     * @param bundlesToAdd bundles to add (key=Locale; value=Bundle)
+     */
+    public void addBundles(Map<Locale, Bundle> bundlesToAdd) {
+        Map<Bundle, Boolean> added = new LinkedHashMap<Bundle, Boolean>();
+        for (Map.Entry<Locale, Bundle> entry : bundlesToAdd.entrySet()) {
+            added.put(entry.getValue(), Boolean.valueOf(
+                    putBundle(entry.getKey(), entry.getValue())));
+        }
+        for (Map.Entry<Bundle, Boolean> entry : added.entrySet()) {
+            if (entry.getValue().booleanValue()) {
+                fireAdd(entry.getKey());
+            } else {
+                fireModify(entry.getKey());
+            }
+        }
+    }
+
+    /**
+     * Puts a bundle in this group, or copies its entries into the existing
+     * bundle for the same locale.  Listeners are not notified.
+     * @param locale bundle locale
+     * @param bundle bundle to add
+     * @return <code>true</code> if no bundle existed for that locale
+     */
+    private boolean putBundle(Locale locale, Bundle bundle) {
         Bundle localBundle = bundles.get(locale);
         bundle.setLocale(locale);
         bundle.setBundleGroup(this);
         if (localBundle == null) {
             bundles.put(locale, bundle);
-            refreshKeys();
-            fireAdd(bundle);
-        } else { // TODO if (!localBundle.equals(bundle)) {
-            localBundle.copyFrom(bundle);
-            refreshKeys();
-            fireModify(bundle);
+            for (Iterator<BundleEntry> iter = bundle.iterator();
+                    iter.hasNext();) {
+                keyAdded(iter.next().getKey());
+            }
+            return true;
         }
+        // TODO if (!localBundle.equals(bundle)) {
+        localBundle.copyFrom(bundle);
+        return false;
     }
 
     /**
@@ -121,7 +176,6 @@ public class BundleGroup extends Model implements IBundleVisitable {
                 bundleEntry.setBundle(bundle);
                 bundleEntry.setLocale(locale);
                 bundle.addEntry(bundleEntry);
-                refreshKeys();
                 fireModify(bundle);
             }
         }
@@ -154,7 +208,6 @@ public class BundleGroup extends Model implements IBundleVisitable {
             BundleEntry entry = getBundleEntry(locale, oldKey);
             if (entry != null) {
                 bundle.renameKey(oldKey, newKey);
-                refreshKeys();
                 fireModify(bundle);
             }
             
@@ -207,7 +260,6 @@ public class BundleGroup extends Model implements IBundleVisitable {
             BundleEntry origEntry = getBundleEntry(locale, origKey);
             if (origEntry != null) {
                 bundle.copyKey(origKey, newKey);
-                refreshKeys();
                 fireModify(bundle);
             }
             
@@ -224,7 +276,6 @@ public class BundleGroup extends Model implements IBundleVisitable {
             BundleEntry entry = getBundleEntry(locale, key);
             if (entry != null) {
                 bundle.removeEntry(entry);
-                refreshKeys();
                 fireModify(bundle);
             }
         }
@@ -269,13 +320,7 @@ public class BundleGroup extends Model implements IBundleVisitable {
      * @return  true <=> The key is already existing.
      */
     public boolean containsKey(String key) {
-        for (Locale locale : bundles.keySet()) {
-            BundleEntry entry = getBundleEntry(locale, key);
-            if (entry != null) {
-                return (true);
-            }
-        }
-        return (false);
+        return keyCounts.containsKey(key);
     }
     
     /**
@@ -297,25 +342,37 @@ public class BundleGroup extends Model implements IBundleVisitable {
 
     /**
      * Gets all resource bundle keys.
-     * @return <code>List</code> of resource bundle keys.
+     * @return sorted, read-only <code>Set</code> of resource bundle keys.
      */
     public SortedSet<String> getKeys() {
-        return keys;
+        return readOnlyKeys;
     }
 
     /**
-     * Gets all resource bundle keys.
-     * @return <code>List</code> of resource bundle keys.
+     * Registers a key newly added to one of this group bundles.
+     * @param key key added
+     */
+    /*default*/ void keyAdded(String key) {
+        int[] count = keyCounts.get(key);
+        if (count == null) {
+            keyCounts.put(key, new int[] { 1 });
+            keys.add(key);
+        } else {
+            count[0]++;
+        }
+    }
+
+    /**
+     * Unregisters a key removed from one of this group bundles.  The key
+     * is dropped once no bundle holds it anymore.
+     * @param key key removed
      */
-//    public Set getKeys() {
-    private Set<String> refreshKeys() {
-        //Set keys = new TreeSet();
-        keys.clear();
-        for (Iterator<Bundle> iter = iterator(); iter.hasNext();) {
-            keys.addAll(iter.next().getKeys());
+    /*default*/ void keyRemoved(String key) {
+        int[] count = keyCounts.get(key);
+        if (count != null && --count[0] == 0) {
+            keyCounts.remove(key);
+            keys.remove(key);
         }
-        return keys;
-//        return Collections.unmodifiableSet(keys);
     }
 
     /**
@@ -324,37 +381,33 @@ public class BundleGroup extends Model implements IBundleVisitable {
      * @return <code>true</code> if the key exists in this bundle group.
      */
     public boolean isKey(String key) {
-        return getKeys().contains(key);
+        return keyCounts.containsKey(key);
     }
     
+    /**
+     * Gets the key following the given key.
+     * @param currentKey the key to start from
+     * @return the next key, or <code>null</code> if the given key is the 
+     *         last one or is not part of this bundle group
+     */
     public String getNextKey(String currentKey) {
-        boolean returnNextKey = false;
-        for (String key : keys) {
-            if (returnNextKey)
-                return key;
-            if (key.equals(currentKey))
-                returnNextKey = true;
+        if (!isKey(currentKey)) {
+            return null;
         }
-        return null;
-//		int index = keys.indexOf(key);
-//		if (index < keys.size()-1)
-//			return keys.get(++index);
-//		return null;
+        return keys.higher(currentKey);
     }
     
+    /**
+     * Gets the key preceding the given key.
+     * @param currentKey the key to start from
+     * @return the previous key, or <code>null</code> if the given key is the 
+     *         first one or is not part of this bundle group
+     */
     public String getPreviousKey(String currentKey) {
-        String previousKey = null;
-        for (String key : keys) {
-            if (key.equals(currentKey))
-                return previousKey;
-            
-            previousKey = key;
+        if (!isKey(currentKey)) {
+            return null;
         }
-        return null;
-//		int index = keys.indexOf(key);
-//		if (index > 0)
-//			return keys.get(--index);
-//		return null;
+        return keys.lower(currentKey);
     }
 
 }
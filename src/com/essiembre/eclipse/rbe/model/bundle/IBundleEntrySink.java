@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2003, 2004  Pascal Essiembre, Essiembre Consultant Inc.
+ * 
+ * This file is part of Essiembre ResourceBundle Editor.
+ * 
+ * Essiembre ResourceBundle Editor is free software; you can redistribute it 
+ * and/or modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * Essiembre ResourceBundle Editor is distributed in the hope that it will be 
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Essiembre ResourceBundle Editor; if not, write to the 
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330, 
+ * Boston, MA  02111-1307  USA
+ */
+package com.essiembre.eclipse.rbe.model.bundle;
+
+/**
+ * Receives what is parsed from a properties file, one piece at a time, 
+ * as the file is being read.
+ * @author Pascal Essiembre (essiembre@users.sourceforge.net)
+ * @version $Author$ $Revision$ $Date$
+ * @see PropertiesParser#parse(java.io.Reader, IBundleEntrySink)
+ */
+public interface IBundleEntrySink {
+    /**
+     * Sets the file head comment.  Invoked once per file, before the first 
+     * bundle entry is added.
+     * @param comment head comment (empty if none)
+     */
+    public void setComment(String comment);
+    /**
+     * Adds a bundle entry.  The entry has no <code>Locale</code> and no
+     * <code>Bundle</code> associated to it.
+     * @param entry bundle entry
+     */
+    public void addBundleEntry(BundleEntry entry);
+}
@@ -20,6 +20,16 @@
  */
 package com.essiembre.eclipse.rbe.model.bundle;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
 import com.essiembre.eclipse.rbe.model.workbench.RBEPreferences;
 
 /**
@@ -38,6 +48,10 @@ public final class PropertiesGenerator {
     private static final char[] HEX_DIGITS = {
         '0','1','2','3','4','5','6','7','8','9','A','B','C','D','E','F'
     };
+    /** A table of lower case hex digits */
+    private static final char[] HEX_DIGITS_LOWER = {
+        '0','1','2','3','4','5','6','7','8','9','a','b','c','d','e','f'
+    };
 
     /** Special resouce bundle characters when persisting any text. */
     private static final String SPECIAL_VALUE_SAVE_CHARS = 
@@ -52,12 +66,14 @@ public final class PropertiesGenerator {
     /** Forced line separators. */
     private static final String[] FORCED_LINE_SEP = new String[3];
     static {
-        FORCED_LINE_SEP[RBEPreferences.NEW_LINE_UNIX] = "\\\\n"; //$NON-NLS-1$
-        FORCED_LINE_SEP[RBEPreferences.NEW_LINE_WIN] = 
-                "\\\\r\\\\n"; //$NON-NLS-1$
-        FORCED_LINE_SEP[RBEPreferences.NEW_LINE_MAC] = "\\\\r"; //$NON-NLS-1$
+        FORCED_LINE_SEP[RBEPreferences.NEW_LINE_UNIX] = "\\n"; //$NON-NLS-1$
+        FORCED_LINE_SEP[RBEPreferences.NEW_LINE_WIN] = "\\r\\n"; //$NON-NLS-1$
+        FORCED_LINE_SEP[RBEPreferences.NEW_LINE_MAC] = "\\r"; //$NON-NLS-1$
     }
 
+    /** Buffered characters written at once when generating to a writer. */
+    private static final int FLUSH_SIZE = 8192;
+
     /**
      * Constructor.
      */
@@ -72,81 +88,224 @@ public final class PropertiesGenerator {
      * @return the generated string
      */
     public static String generate(Bundle bundle) {
-        String lineBreak = SYSTEM_LINE_SEP;
-        int numOfLineBreaks = RBEPreferences.getGroupLineBreaks();
-        StringBuffer text = new StringBuffer();
+        return generate(bundle, (PropertiesLayout) null);
+    }
+
+    /**
+     * Generates a formatted string from a given <code>Bundle</code>,
+     * recording where each entry lies in the returned string.
+     * @param bundle the bundle used to generate the string
+     * @param layout receives the entry positions (may be <code>null</code>)
+     * @return the generated string
+     */
+    public static String generate(Bundle bundle, PropertiesLayout layout) {
+        StringBuilder text = new StringBuilder();
+        try {
+            generate(bundle, text, null, layout);
+        } catch (IOException e) {
+            // should not happen, nothing is written
+        }
+        return text.toString();
+    }
+
+    /**
+     * Generates the text of a single entry, as it would appear in content
+     * generated by {@link #generate(Bundle, PropertiesLayout)} with the
+     * formatting options and equal sign positions recorded in the layout.
+     * @param entry the entry to generate
+     * @param layout layout of generated content holding the entry key
+     * @return entry text, or <code>null</code> if the key is not in the
+     *         layout or the entry is left out for having no value
+     */
+    public static String generateEntry(
+            BundleEntry entry, PropertiesLayout layout) {
+        Format format = layout.getFormat();
+        int index = layout.indexOf(entry.getKey());
+        if (format == null || index < 0 || !isGenerated(entry, format)) {
+            return null;
+        }
+        StringBuilder text = new StringBuilder();
+        appendEntry(text, entry, layout.getEqualIndex(index), format,
+                new StringBuilder(), new StringBuilder());
+        return text.toString();
+    }
+
+    /**
+     * Generates a <code>Bundle</code> as properties file content written to
+     * the given writer, without holding the whole content in memory.  The
+     * writer is flushed but not closed.
+     * @param bundle the bundle to generate
+     * @param writer the writer to write the content to
+     * @throws IOException problem writing the content
+     */
+    public static void generate(Bundle bundle, Writer writer)
+            throws IOException {
+        generate(bundle, new StringBuilder(FLUSH_SIZE * 2), writer, null);
+        writer.flush();
+    }
+
+    /**
+     * Generates a <code>Bundle</code> as properties file content written to
+     * the given stream with the given character set, without holding the 
+     * whole content in memory.  The stream is flushed but not closed.
+     * @param bundle the bundle to generate
+     * @param out the stream to write the content to
+     * @param charset the character set used to encode the content
+     * @throws IOException problem writing the content
+     */
+    public static void generate(
+            Bundle bundle, OutputStream out, Charset charset)
+            throws IOException {
+        generate(bundle, new BufferedWriter(
+                new OutputStreamWriter(out, charset)));
+    }
+
+    /**
+     * Generates a <code>Bundle</code> into the given buffer.  When a writer
+     * is given, the buffer content is written to it every time the buffer
+     * grows past {@link #FLUSH_SIZE} characters, and once at the end.
+     * @param bundle the bundle to generate
+     * @param text the buffer to generate into
+     * @param writer the writer to flush the buffer to (may be 
+     *        <code>null</code>)
+     * @param layout receives the entry positions in the buffer (may be 
+     *        <code>null</code>, must be when a writer is given)
+     * @throws IOException problem writing the content
+     */
+    private static void generate(Bundle bundle, StringBuilder text,
+            Writer writer, PropertiesLayout layout) throws IOException {
+        Format format = new Format();
 
         // Header comment
         String headComment = bundle.getComment();
         if (headComment != null && headComment.length() > 0) {
-            if (RBEPreferences.getShowGenerator() 
-                    && !headComment.startsWith(GENERATED_BY)) {
+            if (format.showGenerator && !headComment.startsWith(GENERATED_BY)) {
                 text.append(GENERATED_BY);
                 text.append(SYSTEM_LINE_SEP);
             }
             text.append(headComment);
         }
         
+        // Plan: key groups and equal sign positions
+        String[] keys = bundle.getKeys().toArray(new String[0]);
+        String[] groups = new String[keys.length];
+        if (format.groupKeys) {
+            for (int i = 0; i < keys.length; i++) {
+                groups[i] = getKeyGroup(keys[i], format.keyGroupSeparator,
+                        format.groupLevelDeepness);
+            }
+        }
+        int[] equalIndexes = getEqualIndexes(keys, groups, format);
+
         // Format
+        StringBuilder value = new StringBuilder();
+        StringBuilder niceValue = new StringBuilder();
+        int[] starts = layout != null ? new int[keys.length] : null;
+        int[] ends = layout != null ? new int[keys.length] : null;
         String group = null;
         int equalIndex = -1;
-        for (String string : bundle.getKeys()) {
-            BundleEntry bundleEntry = bundle.getEntry(string);
-            String key = bundleEntry.getKey();
-            String value = bundleEntry.getValue(); 
-            String comment = bundleEntry.getComment();    
-            
-            if (value != null){
-                // escape backslashes
-                if (RBEPreferences.getConvertUnicodeToEncoded()) {
-                    value = value.replaceAll(
-                            "\\\\", "\\\\\\\\");//$NON-NLS-1$ //$NON-NLS-2$
+        for (int k = 0; k < keys.length; k++) {
+            BundleEntry bundleEntry = bundle.getEntry(keys[k]);
+            if (!isGenerated(bundleEntry, format)) {
+                if (layout != null) {
+                    starts[k] = text.length();
+                    ends[k] = text.length();
                 }
-                
-                // handle new lines in value
-                if (RBEPreferences.getForceNewLineType()) {
-                    value = value.replaceAll(
-                            "\r\n|\r|\n", FORCED_LINE_SEP[ //$NON-NLS-1$
-                                    RBEPreferences.getNewLineType()]);
-                } else {
-                    value = value.replaceAll(
-                            "\r", "\\\\r"); //$NON-NLS-1$ //$NON-NLS-2$
-                    value = value.replaceAll(
-                            "\n", "\\\\n"); //$NON-NLS-1$ //$NON-NLS-2$
-                }
-            } else {
-                value = ""; //$NON-NLS-1$
+                continue;
             }
-            
-            if (RBEPreferences.getKeepEmptyFields() || value.length() > 0) {
-                // handle group equal align and line break options
-                if (RBEPreferences.getGroupKeys()) {
-                    String newGroup = getKeyGroup(key);
-                    if (newGroup == null || !newGroup.equals(group)) {
-                        group = newGroup;
-                        equalIndex = getEqualIndex(key, group, bundle);
-                        for (int i = 0; i < numOfLineBreaks; i++) {
-                            text.append(lineBreak);
-                        }
+
+            // handle group equal align and line break options
+            if (format.groupKeys) {
+                String newGroup = groups[k];
+                if (newGroup == null || !newGroup.equals(group)) {
+                    group = newGroup;
+                    equalIndex = equalIndexes[k];
+                    for (int i = 0; i < format.groupLineBreaks; i++) {
+                        text.append(SYSTEM_LINE_SEP);
                     }
-                } else {
-                    equalIndex = getEqualIndex(key, null, bundle);
-                }
-                
-                // Build line
-                if (RBEPreferences.getConvertUnicodeToEncoded()) {
-                    key = PropertiesGenerator.convertUnicodeToEncoded(key);
-                    value = PropertiesGenerator.convertUnicodeToEncoded(value);
-                }
-                if (comment != null && comment.length() > 0) {
-                    text.append(comment);
                 }
-                appendKey(text, key, equalIndex, bundleEntry.isCommented());
-                appendValue(text, value, equalIndex, bundleEntry.isCommented());
-                text.append(lineBreak);
+            } else {
+                equalIndex = equalIndexes[k];
+            }
+
+            if (layout != null) {
+                starts[k] = text.length();
+            }
+            appendEntry(text, bundleEntry, equalIndex, format,
+                    value, niceValue);
+            if (layout != null) {
+                ends[k] = text.length();
+            }
+            if (writer != null && text.length() > FLUSH_SIZE) {
+                flush(text, writer);
             }
         }
-        return text.toString();
+        if (layout != null) {
+            layout.set(format, keys, equalIndexes, starts, ends);
+        }
+        if (writer != null) {
+            flush(text, writer);
+        }
+    }
+
+    /**
+     * Gets whether an entry is part of generated content, which it is
+     * unless it has no value and empty fields are not kept.
+     * @param bundleEntry the entry
+     * @param format formatting options
+     * @return <code>true</code> if the entry is generated
+     */
+    private static boolean isGenerated(BundleEntry bundleEntry, Format format) {
+        String rawValue = bundleEntry.getValue();
+        return format.keepEmptyFields 
+                || rawValue != null && rawValue.length() > 0;
+    }
+
+    /**
+     * Appends the comment, key and value lines of an entry.
+     * @param text the buffer to append to
+     * @param bundleEntry the entry
+     * @param equalIndex equal sign position, or -1 if not aligned
+     * @param format formatting options
+     * @param value work buffer for the escaped value
+     * @param niceValue work buffer for the value broken after new lines
+     */
+    private static void appendEntry(StringBuilder text,
+            BundleEntry bundleEntry, int equalIndex, Format format,
+            StringBuilder value, StringBuilder niceValue) {
+        String comment = bundleEntry.getComment();    
+        if (comment != null && comment.length() > 0) {
+            text.append(comment);
+        }
+        value.setLength(0);
+        escapeValue(value, bundleEntry.getValue(), format);
+        StringBuilder lineValue = value;
+        if (format.newLineNice) {
+            niceValue.setLength(0);
+            breakAfterNewLines(niceValue, value);
+            lineValue = niceValue;
+        }
+        appendKey(text, bundleEntry.getKey(), equalIndex, 
+                bundleEntry.isCommented(), format);
+        appendValue(text, lineValue, equalIndex, 
+                bundleEntry.isCommented(), format);
+        text.append(SYSTEM_LINE_SEP);
+    }
+
+    /**
+     * Writes a buffer content to a writer and empties the buffer.
+     * @param text the buffer to flush
+     * @param writer the writer to write to
+     * @throws IOException problem writing the content
+     */
+    private static void flush(StringBuilder text, Writer writer)
+            throws IOException {
+        int len = text.length();
+        for (int start = 0; start < len; start += FLUSH_SIZE) {
+            int end = Math.min(len, start + FLUSH_SIZE);
+            writer.append(text, start, end);
+        }
+        text.setLength(0);
     }
         
     /**
@@ -156,109 +315,180 @@ public final class PropertiesGenerator {
      * @see java.util.Properties
      */
     public static String convertUnicodeToEncoded(String str) {
+        char[] hexDigits = RBEPreferences.getConvertUnicodeToEncodedUpper()
+                ? HEX_DIGITS : HEX_DIGITS_LOWER;
         int len = str.length();
-        StringBuffer outBuffer = new StringBuffer(len * 2);
-
+        StringBuilder outBuffer = new StringBuilder(len * 2);
         for (int x = 0; x < len; x++) {
             char aChar = str.charAt(x);
-            if ((aChar < 0x0020) || (aChar > 0x007e)) {
-                outBuffer.append('\\');
-                outBuffer.append('u');
-                outBuffer.append(toHex((aChar >> 12) & 0xF));
-                outBuffer.append(toHex((aChar >> 8) & 0xF));
-                outBuffer.append(toHex((aChar >> 4) & 0xF));
-                outBuffer.append(toHex(aChar & 0xF));
+            if (isEncoded(aChar)) {
+                appendEncoded(outBuffer, aChar, hexDigits);
             } else {
                 outBuffer.append(aChar);
             }
         }
         return outBuffer.toString();
     }
-    
+
     /**
-     * Converts a nibble to a hex character
-     * @param nibble  the nibble to convert.
-     * @return a converted character
+     * Gets whether a character has to be converted to &#92;uxxxx.
+     * @param aChar the character to test
+     * @return <code>true</code> if character is to be encoded
      */
-    private static char toHex(int nibble) {
-        char hexChar = HEX_DIGITS[(nibble & 0xF)];
-        if (!RBEPreferences.getConvertUnicodeToEncodedUpper()) {
-            return Character.toLowerCase(hexChar);
+    private static boolean isEncoded(char aChar) {
+        return (aChar < 0x0020) || (aChar > 0x007e);
+    }
+
+    /**
+     * Appends a character encoded as &#92;uxxxx.
+     * @param buf the buffer to append to
+     * @param aChar the character to encode
+     * @param hexDigits hex digits to use
+     */
+    private static void appendEncoded(
+            StringBuilder buf, char aChar, char[] hexDigits) {
+        buf.append('\\');
+        buf.append('u');
+        buf.append(hexDigits[(aChar >> 12) & 0xF]);
+        buf.append(hexDigits[(aChar >> 8) & 0xF]);
+        buf.append(hexDigits[(aChar >> 4) & 0xF]);
+        buf.append(hexDigits[aChar & 0xF]);
+    }
+
+    /**
+     * Escapes a raw value in a single pass: backslashes and unicodes
+     * when converting to encoded, new lines to their escaped form, and
+     * a potential leading space.
+     * @param buf the buffer to store the escaped value into
+     * @param value the raw value (may be <code>null</code>)
+     * @param format formatting options
+     */
+    private static void escapeValue(
+            StringBuilder buf, String value, Format format) {
+        if (value == null) {
+            return;
+        }
+        int len = value.length();
+        // Escape potential leading spaces.
+        if (len > 0 && value.charAt(0) == ' ') {
+            buf.append('\\');
+        }
+        for (int x = 0; x < len; x++) {
+            char aChar = value.charAt(x);
+            if (aChar == '\r' || aChar == '\n') {
+                if (format.forcedLineSep == null) {
+                    buf.append(aChar == '\r' ? "\\r" : "\\n"); //$NON-NLS-1$ //$NON-NLS-2$
+                } else {
+                    if (aChar == '\r' && x + 1 < len 
+                            && value.charAt(x + 1) == '\n') {
+                        x++;
+                    }
+                    buf.append(format.forcedLineSep);
+                }
+            } else if (!format.convertUnicodeToEncoded) {
+                buf.append(aChar);
+            } else if (aChar == '\\') {
+                buf.append("\\\\"); //$NON-NLS-1$
+            } else if (isEncoded(aChar)) {
+                appendEncoded(buf, aChar, format.hexDigits);
+            } else {
+                buf.append(aChar);
+            }
+        }
+    }
+
+    /**
+     * Breaks the line after every escaped new line (&#92;r&#92;n, &#92;r
+     * or &#92;n) found in an escaped value.
+     * @param buf the buffer to store the broken value into
+     * @param value the escaped value
+     */
+    private static void breakAfterNewLines(
+            StringBuilder buf, CharSequence value) {
+        int len = value.length();
+        for (int x = 0; x < len; x++) {
+            char aChar = value.charAt(x);
+            buf.append(aChar);
+            if (aChar != '\\' || x + 1 == len) {
+                continue;
+            }
+            char next = value.charAt(x + 1);
+            if (next == 'r' || next == 'n') {
+                buf.append(next);
+                x++;
+                if (next == 'r' && x + 2 < len
+                        && value.charAt(x + 1) == '\\' 
+                        && value.charAt(x + 2) == 'n') {
+                    buf.append("\\n"); //$NON-NLS-1$
+                    x += 2;
+                }
+                buf.append('\\');
+                buf.append(SYSTEM_LINE_SEP);
+            }
         }
-        return hexChar;
     }
 
     /**
      * Appends a value to resource bundle content.
      * @param text the resource bundle content so far
-     * @param value the value to add
+     * @param value the escaped value to add
      * @param equalIndex the equal sign position
      * @param commented is the value commented
+     * @param format formatting options
      */
-    private static void appendValue(
-            StringBuffer text, String value, 
-            int equalIndex, boolean commented) {
-        if (value != null) {
-            // Escape potential leading spaces.
-            if (value.startsWith(" ")) { //$NON-NLS-1$
-                value = "\\" + value; //$NON-NLS-1$
-            }
-            int lineLength = RBEPreferences.getWrapCharLimit() - 1;
-            int valueStartPos = equalIndex;
-            if (RBEPreferences.getSpacesAroundEqualSigns()) {
-                valueStartPos += 3;
-            } else {
-                valueStartPos += 1;
-            }
-            
-            // Break line after escaped new line
-            if (RBEPreferences.getNewLineNice()) {
-                value = value.replaceAll(
-                        "(\\\\r\\\\n|\\\\r|\\\\n)", //$NON-NLS-1$
-                        "$1\\\\" + SYSTEM_LINE_SEP); //$NON-NLS-1$
-            }
-            // Wrap lines
-            if (RBEPreferences.getWrapLines() && valueStartPos < lineLength) {
-                StringBuffer valueBuf = new StringBuffer(value);
-                while (valueBuf.length() + valueStartPos > lineLength
-                        || valueBuf.indexOf("\n") != -1) { //$NON-NLS-1$
-                    int endPos = Math.min(
-                            valueBuf.length(), lineLength - valueStartPos);
-                    String line = valueBuf.substring(0, endPos);
-                    int breakPos = line.indexOf(SYSTEM_LINE_SEP);
+    private static void appendValue(StringBuilder text, CharSequence value, 
+            int equalIndex, boolean commented, Format format) {
+        int lineLength = format.wrapCharLimit - 1;
+        int valueStartPos = equalIndex;
+        if (format.spacesAroundEqualSigns) {
+            valueStartPos += 3;
+        } else {
+            valueStartPos += 1;
+        }
+        
+        // Wrap lines
+        if (format.wrapLines && valueStartPos < lineLength) {
+            int start = 0;
+            int end = value.length();
+            int newLine = indexOf(value, "\n", 0, end); //$NON-NLS-1$
+            while (end - start + valueStartPos > lineLength
+                    || newLine != -1) {
+                int endPos = Math.min(
+                        end - start, lineLength - valueStartPos);
+                int breakPos = indexOf(
+                        value, SYSTEM_LINE_SEP, start, start + endPos);
+                if (breakPos != -1) {
+                    endPos = breakPos - start + SYSTEM_LINE_SEP.length();
+                    saveValue(text, value, start, start + endPos);
+                } else {
+                    breakPos = lastIndexOf(value, ' ', start, start + endPos);
                     if (breakPos != -1) {
-                        endPos = breakPos + SYSTEM_LINE_SEP.length();
-                        saveValue(text, valueBuf.substring(0, endPos));
-                        //text.append(valueBuf.substring(0, endPos));
-                    } else {
-                        breakPos = line.lastIndexOf(' ');
-                        if (breakPos != -1) {
-                            endPos = breakPos + 1;
-                            saveValue(text, valueBuf.substring(0, endPos));
-                            //text.append(valueBuf.substring(0, endPos));
-                            text.append("\\"); //$NON-NLS-1$
-                            text.append(SYSTEM_LINE_SEP);
-                        }
-                    }
-                    valueBuf.delete(0, endPos);
-                    // Figure out starting position for next line
-                    if (!RBEPreferences.getWrapAlignEqualSigns()) {
-                        valueStartPos = RBEPreferences.getWrapIndentSpaces();
+                        endPos = breakPos - start + 1;
+                        saveValue(text, value, start, start + endPos);
+                        text.append('\\');
+                        text.append(SYSTEM_LINE_SEP);
                     }
+                }
+                start += endPos;
+                if (newLine != -1 && newLine < start) {
+                    newLine = indexOf(value, "\n", start, end); //$NON-NLS-1$
+                }
+                // Figure out starting position for next line
+                if (!format.wrapAlignEqualSigns) {
+                    valueStartPos = format.wrapIndentSpaces;
+                }
 
-                    if (commented && valueStartPos > 0) {
-                        text.append("##"); //$NON-NLS-1$
-                    }
+                if (commented && valueStartPos > 0) {
+                    text.append("##"); //$NON-NLS-1$
+                }
 
-                    for (int i = 0; i < valueStartPos; i++) {
-                        text.append(' ');
-                    }
+                for (int i = 0; i < valueStartPos; i++) {
+                    text.append(' ');
                 }
-                text.append(valueBuf);
-            } else {
-                saveValue(text, value);
-                //text.append(value);
             }
+            text.append(value, start, end);
+        } else {
+            saveValue(text, value, 0, value.length());
         }
     }
 
@@ -268,61 +498,110 @@ public final class PropertiesGenerator {
      * @param key the key to add
      * @param equalIndex the equal sign position
      * @param commented is the key commented out
+     * @param format formatting options
      */
-    private static void appendKey(
-            StringBuffer text, String key, int equalIndex, boolean commented) {
+    private static void appendKey(StringBuilder text, String key, 
+            int equalIndex, boolean commented, Format format) {
 
         if (commented) {
             text.append("##"); //$NON-NLS-1$
         }
         
-        // Escape and persist the rest
-        saveKey(text, key);
-//        text.append(key);
-        for (int i = 0; i < equalIndex - key.length(); i++) {
+        // Escape and persist the key, measuring it before escaping
+        int keyLength = 0;
+        int len = key.length();
+        for (int x = 0; x < len; x++) {
+            char aChar = key.charAt(x);
+            if (format.convertUnicodeToEncoded && isEncoded(aChar)) {
+                appendEncoded(text, aChar, format.hexDigits);
+                keyLength += 6;
+            } else {
+                if (SPECIAL_KEY_SAVE_CHARS.indexOf(aChar) != -1) {
+                    text.append('\\');
+                }
+                text.append(aChar);
+                keyLength++;
+            }
+        }
+        for (int i = 0; i < equalIndex - keyLength; i++) {
             text.append(' ');
         }
-        if (RBEPreferences.getSpacesAroundEqualSigns()) {
+        if (format.spacesAroundEqualSigns) {
             text.append(" = "); //$NON-NLS-1$
         } else {
             text.append("="); //$NON-NLS-1$
         }
     }
     
-    
-    private static void saveKey(StringBuffer buf, String str) {
-        saveText(buf, str, SPECIAL_KEY_SAVE_CHARS);
-    }
-    private static void saveValue(StringBuffer buf, String str) {
-        saveText(buf, str, SPECIAL_VALUE_SAVE_CHARS);
-    }
-    
     /**
-     * Saves some text in a given buffer after converting special characters.
+     * Saves part of a value in a given buffer after converting special 
+     * characters.
      * @param buf the buffer to store the text into
-     * @param str the value to save
-     * @param escapeChars characters to escape
+     * @param value the value to save
+     * @param start start index (inclusive)
+     * @param end end index (exclusive)
      */
-    private static void saveText(
-            StringBuffer buf, String str, String escapeChars) {
-        int len = str.length();
-        for(int x = 0; x < len; x++) {
-            char aChar = str.charAt(x);
-            if (escapeChars.indexOf(aChar) != -1) {
+    private static void saveValue(
+            StringBuilder buf, CharSequence value, int start, int end) {
+        for (int x = start; x < end; x++) {
+            char aChar = value.charAt(x);
+            if (SPECIAL_VALUE_SAVE_CHARS.indexOf(aChar) != -1) {
                 buf.append('\\');
             }
             buf.append(aChar);
         }
     }
+
+    /**
+     * Finds a string fully contained within a range of a character sequence.
+     * @param seq the sequence to search
+     * @param str the string to find
+     * @param start start index (inclusive)
+     * @param end end index (exclusive)
+     * @return index of the string, or -1 if not found
+     */
+    private static int indexOf(
+            CharSequence seq, String str, int start, int end) {
+        int strLength = str.length();
+        outer:
+        for (int x = start; x <= end - strLength; x++) {
+            for (int i = 0; i < strLength; i++) {
+                if (seq.charAt(x + i) != str.charAt(i)) {
+                    continue outer;
+                }
+            }
+            return x;
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the last occurence of a character within a range of a character 
+     * sequence.
+     * @param seq the sequence to search
+     * @param aChar the character to find
+     * @param start start index (inclusive)
+     * @param end end index (exclusive)
+     * @return index of the character, or -1 if not found
+     */
+    private static int lastIndexOf(
+            CharSequence seq, char aChar, int start, int end) {
+        for (int x = end - 1; x >= start; x--) {
+            if (seq.charAt(x) == aChar) {
+                return x;
+            }
+        }
+        return -1;
+    }
     
     /**
      * Gets the group from a resource bundle key.
      * @param key the key to get a group from
+     * @param sep key group separator
+     * @param deepness how many level deep keys are grouped
      * @return key group
      */
-    private static String getKeyGroup(String key) {
-        String sep = RBEPreferences.getKeyGroupSeparator();
-        int deepness = RBEPreferences.getGroupLevelDeepness();
+    private static String getKeyGroup(String key, String sep, int deepness) {
         int endIndex = 0;
         int levelFound = 0;
         
@@ -343,34 +622,141 @@ public final class PropertiesGenerator {
     }
     
     /**
-     * Gets the position where the equal sign should be located for
-     * the given group.
-     * @param key resource bundle key
-     * @param group resource bundle key group
-     * @param bundle resource bundle
-     * @return position
+     * Gets the position where the equal sign should be located for each of
+     * the given sorted keys: the length of the longest key in the bundle
+     * (or, when grouping keys, the longest key starting with the key
+     * group), or -1 when not aligning equal signs.
+     * @param keys sorted resource bundle keys
+     * @param groups resource bundle key group for each key
+     * @param format formatting options
+     * @return equal sign position for each key
      */
-    private static int getEqualIndex(String key, String group, Bundle bundle) {
-        int equalIndex = -1;
-        boolean alignEquals = RBEPreferences.getAlignEqualSigns();
-        boolean groupKeys = RBEPreferences.getGroupKeys();
-        boolean groupAlignEquals = RBEPreferences.getGroupAlignEqualSigns();
+    private static int[] getEqualIndexes(
+            String[] keys, String[] groups, Format format) {
+        int[] equalIndexes = new int[keys.length];
+        boolean groupKeys = format.groupKeys;
 
         // Exit now if we are not aligning equals
-        if (!alignEquals || groupKeys && !groupAlignEquals 
-                         || groupKeys && group == null) {
-            return -1;
+        if (!format.alignEquals || groupKeys && !format.groupAlignEquals) {
+            Arrays.fill(equalIndexes, -1);
+            return equalIndexes;
         }
-        
-        // Get equal index
-        for (String iterKey : bundle.getKeys()) {
-            if (!groupKeys || groupAlignEquals && iterKey.startsWith(group)) {
-                int index = iterKey.length();
-                if (index > equalIndex) {
-                    equalIndex = index;
+
+        if (!groupKeys) {
+            int equalIndex = -1;
+            for (String key : keys) {
+                equalIndex = Math.max(equalIndex, key.length());
+            }
+            Arrays.fill(equalIndexes, equalIndex);
+            return equalIndexes;
+        }
+
+        // Keys starting with a group are contiguous among sorted keys
+        Map<String, Integer> groupEqualIndexes = new HashMap<String, Integer>();
+        for (int i = 0; i < keys.length; i++) {
+            String group = groups[i];
+            if (group == null) {
+                equalIndexes[i] = -1;
+                continue;
+            }
+            Integer equalIndex = groupEqualIndexes.get(group);
+            if (equalIndex == null) {
+                int index = Arrays.binarySearch(keys, group);
+                if (index < 0) {
+                    index = -index - 1;
+                }
+                int max = -1;
+                for (; index < keys.length && keys[index].startsWith(group);
+                        index++) {
+                    max = Math.max(max, keys[index].length());
                 }
+                equalIndex = Integer.valueOf(max);
+                groupEqualIndexes.put(group, equalIndex);
             }
-        }        
-        return equalIndex;
+            equalIndexes[i] = equalIndex.intValue();
+        }
+        return equalIndexes;
+    }
+
+    /**
+     * Immutable snapshot of the formatting preferences, read once per
+     * generated file.  Snapshots are equal when all their options are.
+     */
+    /*default*/ static final class Format {
+        final boolean showGenerator = RBEPreferences.getShowGenerator();
+        final boolean keepEmptyFields = RBEPreferences.getKeepEmptyFields();
+        final boolean groupKeys = RBEPreferences.getGroupKeys();
+        final String keyGroupSeparator = 
+                RBEPreferences.getKeyGroupSeparator();
+        final int groupLevelDeepness = RBEPreferences.getGroupLevelDeepness();
+        final int groupLineBreaks = RBEPreferences.getGroupLineBreaks();
+        final boolean alignEquals = RBEPreferences.getAlignEqualSigns();
+        final boolean groupAlignEquals = 
+                RBEPreferences.getGroupAlignEqualSigns();
+        final boolean spacesAroundEqualSigns = 
+                RBEPreferences.getSpacesAroundEqualSigns();
+        final boolean wrapLines = RBEPreferences.getWrapLines();
+        final int wrapCharLimit = RBEPreferences.getWrapCharLimit();
+        final boolean wrapAlignEqualSigns = 
+                RBEPreferences.getWrapAlignEqualSigns();
+        final int wrapIndentSpaces = RBEPreferences.getWrapIndentSpaces();
+        final boolean convertUnicodeToEncoded = 
+                RBEPreferences.getConvertUnicodeToEncoded();
+        final char[] hexDigits = 
+                RBEPreferences.getConvertUnicodeToEncodedUpper()
+                        ? HEX_DIGITS : HEX_DIGITS_LOWER;
+        /** Forced line separator, or <code>null</code> if not forced. */
+        final String forcedLineSep = RBEPreferences.getForceNewLineType()
+                ? FORCED_LINE_SEP[RBEPreferences.getNewLineType()] : null;
+        final boolean newLineNice = RBEPreferences.getNewLineNice();
+
+        /**
+         * @see java.lang.Object#equals(java.lang.Object)
+         */
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Format)) {
+                return false;
+            }
+            Format other = (Format) obj;
+            return showGenerator == other.showGenerator
+                    && keepEmptyFields == other.keepEmptyFields
+                    && groupKeys == other.groupKeys
+                    && isEqual(keyGroupSeparator, other.keyGroupSeparator)
+                    && groupLevelDeepness == other.groupLevelDeepness
+                    && groupLineBreaks == other.groupLineBreaks
+                    && alignEquals == other.alignEquals
+                    && groupAlignEquals == other.groupAlignEquals
+                    && spacesAroundEqualSigns == other.spacesAroundEqualSigns
+                    && wrapLines == other.wrapLines
+                    && wrapCharLimit == other.wrapCharLimit
+                    && wrapAlignEqualSigns == other.wrapAlignEqualSigns
+                    && wrapIndentSpaces == other.wrapIndentSpaces
+                    && convertUnicodeToEncoded 
+                            == other.convertUnicodeToEncoded
+                    && hexDigits == other.hexDigits
+                    && isEqual(forcedLineSep, other.forcedLineSep)
+                    && newLineNice == other.newLineNice;
+        }
+
+        /**
+         * @see java.lang.Object#hashCode()
+         */
+        @Override
+        public int hashCode() {
+            return (keyGroupSeparator == null 
+                    ? 0 : keyGroupSeparator.hashCode()) * 31
+                    + groupLevelDeepness * 17 + wrapCharLimit;
+        }
+
+        /**
+         * Compares two strings, either of which may be <code>null</code>.
+         * @param str1 first string
+         * @param str2 second string
+         * @return <code>true</code> if equal
+         */
+        private static boolean isEqual(String str1, String str2) {
+            return str1 == null ? str2 == null : str1.equals(str2);
+        }
     }
 }
@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2003, 2004  Pascal Essiembre, Essiembre Consultant Inc.
+ *
+ * This file is part of Essiembre ResourceBundle Editor.
+ *
+ * Essiembre ResourceBundle Editor is free software; you can redistribute it
+ * and/or modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * Essiembre ResourceBundle Editor is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Essiembre ResourceBundle Editor; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+package com.essiembre.eclipse.rbe.model.bundle;
+
+import java.util.Arrays;
+
+/**
+ * Where each entry lies in properties file content generated by
+ * {@link PropertiesGenerator#generate(Bundle, PropertiesLayout)}, so that
+ * a single entry can be regenerated in place with
+ * {@link PropertiesGenerator#generateEntry(BundleEntry, PropertiesLayout)}.
+ * An entry text holds its comment, key and value lines, without the line
+ * breaks separating key groups.  Entries replaced afterwards are recorded
+ * with {@link #setLength(int, int)}, which moves the following entries.
+ * @author Pascal Essiembre (essiembre@users.sourceforge.net)
+ * @version $Author$ $Revision$ $Date$
+ */
+public final class PropertiesLayout {
+
+    /** Formatting options the content was generated with. */
+    private PropertiesGenerator.Format format;
+    /** Keys of the bundle, sorted. */
+    private String[] keys = new String[0];
+    /** Equal sign position of each key. */
+    private int[] equalIndexes = new int[0];
+    /** Generated start offset of each entry. */
+    private int[] starts = new int[0];
+    /**
+     * Generated end offset of each entry, equal to its start offset when
+     * the entry was left out for having no value.
+     */
+    private int[] ends = new int[0];
+    /**
+     * Length changes of replaced entries, as a binary indexed tree where
+     * summing up to an entry gives how far it moved.
+     */
+    private int[] moves = new int[1];
+
+    /**
+     * Constructor.
+     */
+    public PropertiesLayout() {
+        super();
+    }
+
+    /**
+     * Records generated content.
+     * @param format formatting options used
+     * @param keys keys of the bundle, sorted
+     * @param equalIndexes equal sign position of each key
+     * @param starts start offset of each entry
+     * @param ends end offset of each entry
+     */
+    /*default*/ void set(PropertiesGenerator.Format format, String[] keys,
+            int[] equalIndexes, int[] starts, int[] ends) {
+        this.format = format;
+        this.keys = keys;
+        this.equalIndexes = equalIndexes;
+        this.starts = starts;
+        this.ends = ends;
+        this.moves = new int[keys.length + 1];
+    }
+
+    /**
+     * Gets the formatting options the content was generated with.
+     * @return formatting options, or <code>null</code> if nothing was
+     *         generated
+     */
+    /*default*/ PropertiesGenerator.Format getFormat() {
+        return format;
+    }
+
+    /**
+     * Gets the equal sign position of an entry.
+     * @param index entry index
+     * @return equal sign position, or -1 if not aligned
+     */
+    /*default*/ int getEqualIndex(int index) {
+        return equalIndexes[index];
+    }
+
+    /**
+     * Gets whether the formatting preferences are still those the content
+     * was generated with.  When they are not, entries cannot be
+     * regenerated on their own.
+     * @return <code>true</code> if the formatting preferences are unchanged
+     */
+    public boolean isFormatCurrent() {
+        return format != null && format.equals(new PropertiesGenerator.Format());
+    }
+
+    /**
+     * Gets the index of the entry for a key.
+     * @param key entry key
+     * @return entry index, or -1 if the key was not generated
+     */
+    public int indexOf(String key) {
+        int index = Arrays.binarySearch(keys, key);
+        return index < 0 ? -1 : index;
+    }
+
+    /**
+     * Gets the current offset of an entry.
+     * @param index entry index
+     * @return entry offset
+     */
+    public int getOffset(int index) {
+        return starts[index] + getMove(index);
+    }
+
+    /**
+     * Gets the current length of an entry.
+     * @param index entry index
+     * @return entry length, 0 if the entry was left out
+     */
+    public int getLength(int index) {
+        return ends[index] - starts[index]
+                + getMove(index + 1) - getMove(index);
+    }
+
+    /**
+     * Records that an entry was replaced with text of the given length,
+     * moving the entries following it.
+     * @param index entry index
+     * @param length new entry length
+     */
+    public void setLength(int index, int length) {
+        int delta = length - getLength(index);
+        for (int i = index + 1; i < moves.length; i += i & -i) {
+            moves[i] += delta;
+        }
+    }
+
+    /**
+     * Gets how far an entry moved since generated, which is how much the
+     * entries before it grew.
+     * @param index entry index
+     * @return offset change
+     */
+    private int getMove(int index) {
+        int move = 0;
+        for (int i = index; i > 0; i -= i & -i) {
+            move += moves[i];
+        }
+        return move;
+    }
+}
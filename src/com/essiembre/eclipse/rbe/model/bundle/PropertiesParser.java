@@ -20,6 +20,8 @@
  */
 package com.essiembre.eclipse.rbe.model.bundle;
 
+import java.io.IOException;
+import java.io.Reader;
 import java.util.regex.Pattern;
 
 import com.essiembre.eclipse.rbe.RBEPlugin;
@@ -64,6 +66,60 @@ public final class PropertiesParser {
      * @return a new bundle
      */
     public static Bundle parse(String properties) {
+        if (RBEPreferences.getLegacyParser()) {
+            return parseLegacy(properties);
+        }
+        char[] chars = properties.toCharArray();
+        Bundle bundle = new Bundle();
+        try {
+            new PropertiesScanner(chars, chars.length,
+                    RBEPreferences.getConvertEncodedToUnicode()).scan(
+                            new BundleSink(bundle));
+        } catch (IOException e) {
+            // should not happen, nothing is read
+        }
+        return bundle;
+    }
+
+    /**
+     * Parses characters read from a reader and converts them to a
+     * <code>Bundle</code>.  The returned bundle will have no 
+     * <code>Locale</code> and no <code>BundleGroup</code> associated to it.
+     * The reader is not closed.
+     * @param reader reader supplying the properties to parse
+     * @return a new bundle
+     * @throws IOException problem reading properties
+     */
+    public static Bundle parse(Reader reader) throws IOException {
+        Bundle bundle = new Bundle();
+        parse(reader, new BundleSink(bundle));
+        return bundle;
+    }
+
+    /**
+     * Parses characters read from a reader, handing the file comment and 
+     * every entry to the given sink as soon as they are parsed.  Only
+     * the line being parsed is held in memory, so files of any size
+     * can be processed.  The reader is not closed.
+     * @param reader reader supplying the properties to parse
+     * @param sink receiver of the file comment and bundle entries
+     * @throws IOException problem reading properties
+     */
+    public static void parse(Reader reader, IBundleEntrySink sink)
+            throws IOException {
+        new PropertiesScanner(reader,
+                RBEPreferences.getConvertEncodedToUnicode()).scan(sink);
+    }
+
+    /**
+     * Parses a string and converts it to a <code>Bundle</code>, splitting
+     * the string into lines and matching each line against regular
+     * expressions.  This is the original parser, kept for comparison
+     * with {@link PropertiesScanner}.
+     * @param properties the string containing the properties to parse
+     * @return a new bundle
+     */
+    private static Bundle parseLegacy(String properties) {
         Bundle bundle = new Bundle();
         String[] lines = PATTERN_LINE_BREAK.split(properties);
         
@@ -243,4 +299,23 @@ public final class PropertiesParser {
         }
         return buf.toString();
     }
+
+    /**
+     * Sink adding parsed entries to a bundle.
+     */
+    private static final class BundleSink implements IBundleEntrySink {
+        private final Bundle bundle;
+        /*default*/ BundleSink(Bundle bundle) {
+            super();
+            this.bundle = bundle;
+        }
+        @Override
+        public void setComment(String comment) {
+            bundle.setComment(comment);
+        }
+        @Override
+        public void addBundleEntry(BundleEntry entry) {
+            bundle.addEntry(entry);
+        }
+    }
 }
@@ -0,0 +1,422 @@
+/*
+ * Copyright (C) 2003, 2004  Pascal Essiembre, Essiembre Consultant Inc.
+ *
+ * This file is part of Essiembre ResourceBundle Editor.
+ *
+ * Essiembre ResourceBundle Editor is free software; you can redistribute it
+ * and/or modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * Essiembre ResourceBundle Editor is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Essiembre ResourceBundle Editor; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+package com.essiembre.eclipse.rbe.model.bundle;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import com.essiembre.eclipse.rbe.RBEPlugin;
+
+/**
+ * Single-pass properties parser.  Walks the properties text once, character
+ * by character, without splitting it into lines or using regular
+ * expressions.  It produces the same bundles as the original
+ * line-splitting parser kept in {@link PropertiesParser}.  Text is either
+ * given all at once or read from a <code>Reader</code> as parsing goes,
+ * in which case only the current line is kept in memory.
+ * @author Pascal Essiembre (essiembre@users.sourceforge.net)
+ * @version $Author$ $Revision$ $Date$
+ */
+final class PropertiesScanner {
+
+    /** System line separator. */
+    private static final String SYSTEM_LINE_SEPARATOR =
+            System.getProperty("line.separator"); //$NON-NLS-1$
+    /** Initial buffer size when reading from a reader. */
+    private static final int BUFFER_SIZE = 8192;
+
+    /** Reader supplying text, or <code>null</code> if text is all in buf. */
+    private final Reader reader;
+    /** Text being parsed. */
+    private char[] buf;
+    /** Number of valid characters in the text being parsed. */
+    private int limit;
+    /** Whether to convert encoded &#92;uxxxx values to unicode. */
+    private final boolean convertEncoded;
+    /** Reading position. */
+    private int pos;
+
+    /* Bounds of the physical line last read (absolute indexes). */
+    private int lineStart;
+    private int lineEnd;
+    /** Key/value separator index in last line read (relative), or -1. */
+    private int separator;
+    /**
+     * Index of the last character in last line read (relative) that a
+     * regular expression "." would not match (\u0085, \u2028, \u2029),
+     * or -1.
+     */
+    private int oddTerminator;
+
+    /** Logical line, when made of several continued physical lines. */
+    private char[] joined = new char[256];
+    private int joinedLength;
+    /** Reusable buffer for building keys and values. */
+    private final StringBuilder text = new StringBuilder();
+
+    /**
+     * Constructor.
+     * @param buf characters to parse
+     * @param limit number of characters to parse in <code>buf</code>
+     * @param convertEncoded <code>true</code> to convert encoded
+     *        &#92;uxxxx values to unicode
+     */
+    /*default*/ PropertiesScanner(
+            char[] buf, int limit, boolean convertEncoded) {
+        super();
+        this.reader = null;
+        this.buf = buf;
+        this.limit = limit;
+        this.convertEncoded = convertEncoded;
+    }
+
+    /**
+     * Constructor.
+     * @param reader reader supplying characters to parse
+     * @param convertEncoded <code>true</code> to convert encoded
+     *        &#92;uxxxx values to unicode
+     */
+    /*default*/ PropertiesScanner(Reader reader, boolean convertEncoded) {
+        super();
+        this.reader = reader;
+        this.buf = new char[BUFFER_SIZE];
+        this.limit = 0;
+        this.convertEncoded = convertEncoded;
+    }
+
+    /**
+     * Parses all characters, handing the file comment and each entry
+     * to the given sink as soon as they are read.
+     * @param sink receiver of the parsed file comment and entries
+     * @throws IOException problem reading characters
+     */
+    /*default*/ void scan(IBundleEntrySink sink) throws IOException {
+        boolean doneWithFileComment = false;
+        StringBuilder fileComment = new StringBuilder();
+        StringBuilder lineComment = new StringBuilder();
+        while (nextLine()) {
+            int length = lineEnd - lineStart;
+            int equalPosition = separator;
+            char first = length > 0 ? buf[lineStart] : 0;
+
+            boolean isRegularLine = length > 0
+                    && first != '#' && first != '!' && oddTerminator < 1;
+            boolean isCommentedLine = doneWithFileComment && length > 2
+                    && first == '#' && buf[lineStart + 1] == '#'
+                    && buf[lineStart + 2] != '#' && oddTerminator < 3;
+
+            // parse regular and commented lines
+            if (equalPosition >= 1 && (isRegularLine || isCommentedLine)) {
+                if (!doneWithFileComment) {
+                    doneWithFileComment = true;
+                    sink.setComment(fileComment.toString());
+                }
+                String comment = ""; //$NON-NLS-1$
+                if (lineComment.length() > 0) {
+                    comment = lineComment.toString();
+                    lineComment.setLength(0);
+                }
+
+                char[] line = buf;
+                int from = lineStart;
+                int to = lineEnd;
+                if (isCommentedLine) {
+                    from += 2; // skip ##
+                    equalPosition -= 2;
+                }
+                if (buf[to - 1] == '\\') {
+                    joinLines(from, to, isCommentedLine);
+                    line = joined;
+                    from = 0;
+                    to = joinedLength;
+                }
+                String key = readKey(line, from, from + equalPosition);
+                String value = readValue(line, from + equalPosition + 1, to);
+                sink.addBundleEntry(
+                        new BundleEntry(key, value, comment, isCommentedLine));
+            // parse comment line
+            } else if (first == '#' || first == '!') {
+                if (!doneWithFileComment) {
+                    fileComment.append(buf, lineStart, length);
+                    fileComment.append(SYSTEM_LINE_SEPARATOR);
+                } else {
+                    lineComment.append(buf, lineStart, length);
+                    lineComment.append(SYSTEM_LINE_SEPARATOR);
+                }
+            // handle blank or unsupported line
+            } else if (!doneWithFileComment) {
+                doneWithFileComment = true;
+                sink.setComment(fileComment.toString());
+            }
+        }
+        if (!doneWithFileComment) {
+            sink.setComment(fileComment.toString());
+        }
+    }
+
+    /**
+     * Reads the next physical line, recording where it starts and ends,
+     * where its first unescaped key/value separator is, and whether it
+     * holds unusual line terminator characters.
+     * @return <code>false</code> if there are no more lines
+     * @throws IOException problem reading characters
+     */
+    private boolean nextLine() throws IOException {
+        lineStart = pos;
+        if (pos == limit && !fill()) {
+            return false;
+        }
+        separator = -1;
+        oddTerminator = -1;
+        boolean escaped = false;
+        int n = 0;
+        for (;; n++) {
+            if (lineStart + n == limit && !fill()) {
+                break;
+            }
+            char c = buf[lineStart + n];
+            if (c == '\n' || c == '\r') {
+                break;
+            }
+            if (escaped) {
+                escaped = false;
+            } else if (c == '\\') {
+                escaped = true;
+            } else if (separator == -1 && (c == '=' || c == ':')) {
+                separator = n;
+            }
+            if (c == '\u0085' || c == '\u2028' || c == '\u2029') {
+                oddTerminator = n;
+            }
+        }
+        lineEnd = lineStart + n;
+        pos = lineEnd;
+        if (pos < limit) {
+            if (buf[pos++] == '\r'
+                    && (pos < limit || fill()) && buf[pos] == '\n') {
+                pos++;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads more characters from the reader, first discarding characters
+     * preceding the current line (growing the buffer if the current line
+     * fills it).
+     * @return <code>false</code> if there are no more characters
+     * @throws IOException problem reading characters
+     */
+    private boolean fill() throws IOException {
+        if (reader == null) {
+            return false;
+        }
+        int shift = lineStart;
+        if (shift > 0) {
+            System.arraycopy(buf, shift, buf, 0, limit - shift);
+            limit -= shift;
+            lineStart -= shift;
+            lineEnd -= shift;
+            pos -= shift;
+        } else if (limit == buf.length) {
+            char[] newBuf = new char[buf.length * 2];
+            System.arraycopy(buf, 0, newBuf, 0, limit);
+            buf = newBuf;
+        }
+        int count = reader.read(buf, limit, buf.length - limit);
+        if (count <= 0) {
+            return false;
+        }
+        limit += count;
+        return true;
+    }
+
+    /**
+     * Joins a line ending with a backslash with the lines following it,
+     * stripping leading white spaces (and comment marks when
+     * <code>commented</code>) from continuation lines.
+     * @param from start of first line
+     * @param to end of first line
+     * @param commented whether the entry is commented out
+     * @throws IOException problem reading characters
+     */
+    private void joinLines(int from, int to, boolean commented)
+            throws IOException {
+        joinedLength = 0;
+        appendJoined(from, to);
+        while (joinedLength > 0 && joined[joinedLength - 1] == '\\') {
+            joinedLength--;
+            if (nextLine()) {
+                int start = lineStart;
+                while (start < lineEnd && isWhitespace(buf[start])) {
+                    start++;
+                }
+                if (commented && start + 1 < lineEnd
+                        && buf[start] == '#' && buf[start + 1] == '#') {
+                    start += 2;
+                }
+                appendJoined(start, lineEnd);
+            }
+        }
+    }
+
+    private void appendJoined(int from, int to) {
+        int length = to - from;
+        if (joinedLength + length > joined.length) {
+            char[] newJoined = new char[
+                    Math.max(joined.length * 2, joinedLength + length)];
+            System.arraycopy(joined, 0, newJoined, 0, joinedLength);
+            joined = newJoined;
+        }
+        System.arraycopy(buf, from, joined, joinedLength, length);
+        joinedLength += length;
+    }
+
+    /**
+     * Reads a key: trimmed and stripped of backslashes.
+     * @param line characters holding the key
+     * @param from key start
+     * @param to key end (separator position)
+     * @return the key
+     */
+    private String readKey(char[] line, int from, int to) {
+        while (from < to && line[from] <= ' ') {
+            from++;
+        }
+        while (to > from && line[to - 1] <= ' ') {
+            to--;
+        }
+        text.setLength(0);
+        for (int i = from; i < to; i++) {
+            if (line[i] != '\\') {
+                text.append(line[i]);
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * Reads a value: stripped of leading white spaces and unescaped.
+     * @param line characters holding the value
+     * @param from value start (after separator)
+     * @param to value end
+     * @return the value
+     */
+    private String readValue(char[] line, int from, int to) {
+        while (from < to && isWhitespace(line[from])) {
+            from++;
+        }
+        // Unescape leading spaces
+        if (to - from > 1 && line[from] == '\\' && line[from + 1] == ' ') {
+            from++;
+        }
+        text.setLength(0);
+        if (convertEncoded) {
+            decode(line, from, to);
+        } else {
+            for (int x = from; x < to; x++) {
+                char c = line[x];
+                if (c == '\\' && x + 1 < to) {
+                    if (line[x + 1] == 'r') {
+                        c = '\r';
+                        x++;
+                    } else if (line[x + 1] == 'n') {
+                        c = '\n';
+                        x++;
+                    }
+                }
+                text.append(c);
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * Converts encoded &#92;uxxxx to unicode chars and changes special saved
+     * chars to their original forms, the same way as
+     * {@link PropertiesParser#convertEncodedToUnicode(String)}.
+     * @param line characters to convert
+     * @param from start of characters to convert
+     * @param to end of characters to convert
+     */
+    private void decode(char[] line, int from, int to) {
+        char aChar;
+        for (int x = from; x < to;) {
+            aChar = line[x++];
+            if (aChar == '\\' && x + 1 <= to) {
+                aChar = line[x++];
+                if (aChar == 'u' && x + 4 <= to) {
+                    // Read the xxxx
+                    int value = 0;
+                    for (int i = 0; i < 4; i++) {
+                        aChar = line[x++];
+                        switch (aChar) {
+                            case '0': case '1': case '2': case '3': case '4':
+                            case '5': case '6': case '7': case '8': case '9':
+                                value = (value << 4) + aChar - '0';
+                                break;
+                            case 'a': case 'b': case 'c':
+                            case 'd': case 'e': case 'f':
+                                value = (value << 4) + 10 + aChar - 'a';
+                                break;
+                            case 'A': case 'B': case 'C':
+                            case 'D': case 'E': case 'F':
+                                value = (value << 4) + 10 + aChar - 'A';
+                                break;
+                            default:
+                                value = aChar;
+                                System.err.println(RBEPlugin.getString(
+                                    "error.init.badencoding") //$NON-NLS-1$
+                                    + new String(line, from, to - from));
+                        }
+                    }
+                    text.append((char) value);
+                } else {
+                    if (aChar == 't') {
+                        aChar = '\t';
+                    } else if (aChar == 'r') {
+                        aChar = '\r';
+                    } else if (aChar == 'n') {
+                        aChar = '\n';
+                    } else if (aChar == 'f') {
+                        aChar = '\f';
+                    } else if (aChar == 'u') {
+                        text.append('\\');
+                    }
+                    text.append(aChar);
+                }
+            } else {
+                text.append(aChar);
+            }
+        }
+    }
+
+    /**
+     * Whether a character is a white space as understood by regular
+     * expressions "\s".
+     * @param c character to test
+     * @return <code>true</code> if white space
+     */
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n'
+                || c == '\u000B' || c == '\f' || c == '\r';
+    }
+}
@@ -28,7 +28,9 @@ import com.essiembre.eclipse.rbe.model.bundle.BundleVisitorAdapter;
 
 /**
  * Finds bundle entries having values identical to the bundle entry given
- * as the pass-along argument.
+ * as the pass-along argument.  To look up the duplicates of a single entry,
+ * <code>Bundle.getDuplicates(BundleEntry)</code> uses an index instead of
+ * visiting every entry.
  * @author Pascal Essiembre (essiembre@users.sourceforge.net)
  * @version $Author$ $Revision$ $Date$
  */
@@ -23,6 +23,7 @@ package com.essiembre.eclipse.rbe.model.bundle.visitors;
 import java.util.ArrayList;
 import java.util.Collection;
 
+import com.essiembre.eclipse.rbe.model.bundle.Bundle;
 import com.essiembre.eclipse.rbe.model.bundle.BundleEntry;
 import com.essiembre.eclipse.rbe.model.bundle.BundleVisitorAdapter;
 import com.essiembre.eclipse.rbe.model.utils.ProximityAnalyzer;
@@ -43,6 +44,13 @@ public class SimilarValuesVisitor extends BundleVisitorAdapter {
 
     /** Proximity analyzer used to find similarities. */
     private ProximityAnalyzer analyzer = WordCountAnalyzer.getInstance();
+
+    /** Entry last matched against, <code>null</code> after clearing. */
+    private BundleEntry lastEntryToMatch;
+    /** Lower case value (or words) of the entry last matched against. */
+    private Object valueToMatch;
+    /** Minimum proximity level of similar values. */
+    private double precision;
     
     /**
      * Constructor.
@@ -63,17 +71,41 @@ public class SimilarValuesVisitor extends BundleVisitorAdapter {
         BundleEntry entryToMatch = (BundleEntry) passAlongArgument;
         if (entry != entryToMatch
                 && entry != null && entryToMatch != null
-                && entry.getValue().length() > 0
-                && analyzer.analyse(
-                        entry.getValue().toLowerCase(), 
-                        entryToMatch.getValue().toLowerCase())
-                        >= RBEPreferences.getReportSimilarValuesPrecision()) {
-            similars.add(entry);
+                && entry.getValue().length() > 0) {
+            if (entryToMatch != lastEntryToMatch) {
+                lastEntryToMatch = entryToMatch;
+                valueToMatch = getComparedValue(entryToMatch);
+                precision = RBEPreferences.getReportSimilarValuesPrecision();
+            }
+            Object value = getComparedValue(entry);
+            if (value != null && valueToMatch != null
+                    && analyzer.isSimilar(value, valueToMatch, precision)) {
+                similars.add(entry);
+            }
         }
     }
     
     
     
+    /**
+     * Gets the value of an entry as handed to the proximity analyzer: the
+     * words cached by the entry for word counting, the lower case value
+     * otherwise.  Words can only be compared within a bundle group, so an
+     * entry outside of any group is skipped.
+     * @param entry a bundle entry
+     * @return value to analyse, or <code>null</code> to skip the entry
+     */
+    private Object getComparedValue(BundleEntry entry) {
+        if (analyzer instanceof WordCountAnalyzer) {
+            Bundle bundle = entry.getBundle();
+            if (bundle == null || bundle.getBundleGroup() == null) {
+                return null;
+            }
+            return entry.getWords();
+        }
+        return entry.getValue().toLowerCase();
+    }
+
     /**
      * Gets the proximity analyzer.
      * @return Returns the proximity analyzer.
@@ -87,6 +119,7 @@ public class SimilarValuesVisitor extends BundleVisitorAdapter {
      */
     public void setProximityAnalyzer(ProximityAnalyzer analyzer) {
         this.analyzer = analyzer;
+        lastEntryToMatch = null;
     }
     
     /**
@@ -102,6 +135,7 @@ public class SimilarValuesVisitor extends BundleVisitorAdapter {
      */
     public void clear() {
         similars.clear();
+        lastEntryToMatch = null;
     }
     
 }
\ No newline at end of file
@@ -0,0 +1,355 @@
+/*
+ * Copyright (C) 2003, 2004  Pascal Essiembre, Essiembre Consultant Inc.
+ *
+ * This file is part of Essiembre ResourceBundle Editor.
+ *
+ * Essiembre ResourceBundle Editor is free software; you can redistribute it
+ * and/or modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * Essiembre ResourceBundle Editor is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Essiembre ResourceBundle Editor; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+package com.essiembre.eclipse.rbe.model.tree;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keys of a flat key tree, held in a sorted array with one bit per key
+ * telling whether the filter hides it, rather than as one
+ * <code>KeyTreeItem</code> per key.  Items are created when asked for,
+ * such as for the rows a viewer shows, and kept while referenced elsewhere,
+ * so a key gives the same item as long as a viewer holds it.  Items
+ * compute their status when first asked for.
+ * @author Pascal Essiembre (essiembre@users.sourceforge.net)
+ * @version $Author$ $Revision$ $Date$
+ */
+public class FlatKeyList {
+
+    /** Key tree holding these keys. */
+    private final KeyTree keyTree;
+    /** Sorted keys, the first <code>size</code> ones being used. */
+    private String[] keys = new String[16];
+    /** Number of keys. */
+    private int size;
+    /** Indexes of the keys hidden by the filter. */
+    private BitSet hidden = new BitSet();
+    /** Items given out and maybe still referenced (key=key). */
+    private final Map<String, ItemReference> items =
+            new HashMap<String, ItemReference>();
+    /** Items no longer referenced. */
+    private final ReferenceQueue<KeyTreeItem> releasedItems =
+            new ReferenceQueue<KeyTreeItem>();
+
+    /**
+     * Constructor.
+     * @param keyTree key tree holding these keys
+     */
+    /*default*/ FlatKeyList(KeyTree keyTree) {
+        super();
+        this.keyTree = keyTree;
+    }
+
+    /**
+     * Gets the number of keys.
+     * @return number of keys
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets the key at the given index.
+     * @param index key index, in key order
+     * @return the key
+     */
+    public String getKey(int index) {
+        return keys[index];
+    }
+
+    /**
+     * Gets the index of a key.
+     * @param key the key
+     * @return the key index, or a negative value if not found
+     */
+    public int indexOf(String key) {
+        int index = Arrays.binarySearch(keys, 0, size, key);
+        return index < 0 ? -1 : index;
+    }
+
+    /**
+     * Gets whether a key is held.
+     * @param key the key
+     * @return <code>true</code> if held
+     */
+    public boolean contains(String key) {
+        return indexOf(key) >= 0;
+    }
+
+    /**
+     * Gets the index of the first key equal to or greater than the given
+     * one.
+     * @param key the key
+     * @return a key index, or the number of keys if none
+     */
+    public int ceilingIndex(String key) {
+        int index = Arrays.binarySearch(keys, 0, size, key);
+        return index < 0 ? -index - 1 : index;
+    }
+
+    /**
+     * Gets the first key greater than the given one.
+     * @param key the key
+     * @return the next key, or <code>null</code> if none
+     */
+    public String higherKey(String key) {
+        int index = Arrays.binarySearch(keys, 0, size, key);
+        index = index < 0 ? -index - 1 : index + 1;
+        return index < size ? keys[index] : null;
+    }
+
+    /**
+     * Gets whether the key at the given index is visible under the filter.
+     * @param index key index
+     * @return <code>true</code> if visible
+     */
+    public boolean isVisible(int index) {
+        return !hidden.get(index);
+    }
+
+    /**
+     * Gets the item of the key at the given index, the same one as long as
+     * it is referenced elsewhere.
+     * @param index key index
+     * @return the key tree item
+     */
+    public KeyTreeItem getItem(int index) {
+        String key = keys[index];
+        expungeReleasedItems();
+        ItemReference reference = items.get(key);
+        KeyTreeItem item = reference == null ? null : reference.get();
+        if (item == null) {
+            item = newItem(index);
+            items.put(key, new ItemReference(item, releasedItems));
+        }
+        return item;
+    }
+
+    /**
+     * Gets the item of a key, the same one as long as it is referenced
+     * elsewhere.
+     * @param key the key
+     * @return the key tree item, or <code>null</code> if the key is not held
+     */
+    public KeyTreeItem getItem(String key) {
+        int index = indexOf(key);
+        return index < 0 ? null : getItem(index);
+    }
+
+    /**
+     * Creates an item for the key at the given index, which is not kept.
+     * Such items are meant for short uses, such as checking whether a key
+     * passes viewer filters.
+     * @param index key index
+     * @return a new key tree item
+     */
+    public KeyTreeItem newItem(int index) {
+        String key = keys[index];
+        KeyTreeItem item = new KeyTreeItem(keyTree, key, key, false);
+        item.setParent(keyTree);
+        item.setVisible(!hidden.get(index));
+        return item;
+    }
+
+    /**
+     * Gets the items given out and still referenced.
+     * @return key tree items
+     */
+    /*default*/ Collection<KeyTreeItem> getCachedItems() {
+        expungeReleasedItems();
+        List<KeyTreeItem> cachedItems = new ArrayList<KeyTreeItem>();
+        for (ItemReference reference : items.values()) {
+            KeyTreeItem item = reference.get();
+            if (item != null) {
+                cachedItems.add(item);
+            }
+        }
+        return cachedItems;
+    }
+
+    /**
+     * Adds a key.  New keys are visible.
+     * @param key the key to add
+     * @return <code>true</code> if the key was not held already
+     */
+    public boolean add(String key) {
+        int index = Arrays.binarySearch(keys, 0, size, key);
+        if (index >= 0) {
+            return false;
+        }
+        index = -index - 1;
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+        }
+        System.arraycopy(keys, index, keys, index + 1, size - index);
+        keys[index] = key;
+        shiftHidden(index, 1);
+        size++;
+        return true;
+    }
+
+    /**
+     * Adds keys.  Keys added to an empty list are copied in one go when
+     * sorted, as when loading a tree.
+     * @param sortedKeys keys to add, sorted
+     */
+    public void addAll(Collection<String> sortedKeys) {
+        if (size > 0) {
+            for (String key : sortedKeys) {
+                add(key);
+            }
+            return;
+        }
+        String[] newKeys = sortedKeys.toArray(
+                new String[Math.max(sortedKeys.size(), 16)]);
+        int count = sortedKeys.size();
+        for (int i = 1; i < count; i++) {
+            if (newKeys[i - 1].compareTo(newKeys[i]) >= 0) {
+                // not sorted after all
+                for (String key : sortedKeys) {
+                    add(key);
+                }
+                return;
+            }
+        }
+        keys = newKeys;
+        size = count;
+        hidden.clear();
+    }
+
+    /**
+     * Removes a key.
+     * @param key the key to remove
+     * @return <code>true</code> if the key was held
+     */
+    public boolean remove(String key) {
+        int index = indexOf(key);
+        if (index < 0) {
+            return false;
+        }
+        System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+        size--;
+        keys[size] = null;
+        shiftHidden(index + 1, -1);
+        items.remove(key);
+        return true;
+    }
+
+    /**
+     * Removes all keys.
+     */
+    public void clear() {
+        keys = new String[16];
+        size = 0;
+        hidden.clear();
+        items.clear();
+    }
+
+    /**
+     * Shows the given keys and hides all others.
+     * @param visibleKeys keys to show, or <code>null</code> to show all keys
+     * @return the items whose visibility changed
+     */
+    /*default*/ Collection<KeyTreeItem> setVisibleKeys(
+            Collection<String> visibleKeys) {
+        BitSet newHidden = new BitSet();
+        if (visibleKeys != null) {
+            newHidden.set(0, size);
+            for (String key : visibleKeys) {
+                int index = indexOf(key);
+                if (index >= 0) {
+                    newHidden.clear(index);
+                }
+            }
+        }
+        BitSet changed = (BitSet) hidden.clone();
+        changed.xor(newHidden);
+        hidden = newHidden;
+        List<KeyTreeItem> changedItems = new ArrayList<KeyTreeItem>();
+        for (int i = changed.nextSetBit(0); i >= 0;
+                i = changed.nextSetBit(i + 1)) {
+            KeyTreeItem item;
+            ItemReference reference = items.get(keys[i]);
+            if (reference != null && reference.get() != null) {
+                item = reference.get();
+                item.setVisible(!newHidden.get(i));
+            } else if (newHidden.get(i)) {
+                // a hidden item is only used to be removed from viewers
+                item = newItem(i);
+            } else {
+                item = getItem(i);
+            }
+            changedItems.add(item);
+        }
+        return changedItems;
+    }
+
+    /**
+     * Moves the hidden bits of the keys from the given index on.
+     * @param from index of the first key to move
+     * @param distance 1 when a key was inserted before, -1 when one was
+     *        removed
+     */
+    private void shiftHidden(int from, int distance) {
+        BitSet moved = hidden.get(from, Math.max(from, size + 1));
+        hidden.clear(Math.min(from, from + distance), size + 1);
+        for (int i = moved.nextSetBit(0); i >= 0; i = moved.nextSetBit(i + 1)) {
+            hidden.set(from + distance + i);
+        }
+    }
+
+    /**
+     * Forgets the items no longer referenced.
+     */
+    private void expungeReleasedItems() {
+        ItemReference reference;
+        while ((reference = (ItemReference) releasedItems.poll()) != null) {
+            if (items.get(reference.key) == reference) {
+                items.remove(reference.key);
+            }
+        }
+    }
+
+    /**
+     * Weak reference to an item, remembering its key.
+     */
+    private static class ItemReference extends WeakReference<KeyTreeItem> {
+        /** Key of the item. */
+        private final String key;
+        /**
+         * Constructor.
+         * @param item the item
+         * @param queue queue of released items
+         */
+        ItemReference(KeyTreeItem item, ReferenceQueue<KeyTreeItem> queue) {
+            super(item, queue);
+            this.key = item.getId();
+        }
+    }
+}
@@ -0,0 +1,299 @@
+/*
+ * Copyright (C) 2003, 2004  Pascal Essiembre, Essiembre Consultant Inc.
+ * 
+ * This file is part of Essiembre ResourceBundle Editor.
+ * 
+ * Essiembre ResourceBundle Editor is free software; you can redistribute it 
+ * and/or modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * Essiembre ResourceBundle Editor is distributed in the hope that it will be 
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Essiembre ResourceBundle Editor; if not, write to the 
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330, 
+ * Boston, MA  02111-1307  USA
+ */
+package com.essiembre.eclipse.rbe.model.tree;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+
+/**
+ * Trigram index of keys, used to find keys containing a given text without
+ * looking at every key.  Each key is given a slot number, and every
+ * three-character sequence of a key lists the slots of the keys holding it.
+ * A search only verifies the keys listed under the rarest trigram of the
+ * searched text.  The last search result is kept so a search for a longer
+ * text containing the previous one only verifies the previous matches.
+ * <p>
+ * Keys can also be indexed by another text than themselves, such as their
+ * value in a bundle.
+ * <p>
+ * Searches may run on any thread while keys are added or removed.
+ * @author Pascal Essiembre (essiembre@users.sourceforge.net)
+ * @version $Author$ $Revision$ $Date$
+ */
+public class KeyIndex {
+
+    /** Length of indexed character sequences. */
+    private static final int GRAM_LENGTH = 3;
+    /** Number of keys verified between two cancellation checks. */
+    private static final int CHECK_INTERVAL = 1024;
+
+    /** Indexed keys by slot, <code>null</code> for removed keys. */
+    private final List<String> keys = new ArrayList<String>();
+    /** Indexed texts by slot, <code>null</code> for removed keys. */
+    private final List<String> texts = new ArrayList<String>();
+    /** Slots of indexed keys. */
+    private final Map<String, Integer> slots = new HashMap<String, Integer>();
+    /** Slots of keys holding each trigram. */
+    private final Map<String, Postings> postings =
+            new HashMap<String, Postings>();
+    /** Number of removed keys still holding a slot. */
+    private int removedCount;
+    /** Number of changes made to this index. */
+    private int modificationCount;
+
+    /** Text of the last completed search. */
+    private String lastText;
+    /** Keys found by the last completed search. */
+    private List<String> lastMatches;
+    /** Texts of the keys found by the last completed search. */
+    private List<String> lastMatchTexts;
+    /** Modification count at the time of the last completed search. */
+    private int lastModificationCount;
+
+    /**
+     * Constructor.
+     */
+    public KeyIndex() {
+        super();
+    }
+
+    /**
+     * Adds a key to this index.  Adding an indexed key does nothing.
+     * @param key the key to add
+     */
+    public void add(String key) {
+        add(key, key);
+    }
+
+    /**
+     * Adds a key to this index, to be found by the given text.  Adding an
+     * indexed key does nothing.
+     * @param key the key to add
+     * @param text the text to find the key by
+     */
+    public synchronized void add(String key, String text) {
+        if (slots.containsKey(key)) {
+            return;
+        }
+        int slot = keys.size();
+        keys.add(key);
+        texts.add(text);
+        slots.put(key, slot);
+        Set<String> grams = new HashSet<String>();
+        for (int i = 0; i + GRAM_LENGTH <= text.length(); i++) {
+            String gram = text.substring(i, i + GRAM_LENGTH);
+            if (grams.add(gram)) {
+                Postings gramPostings = postings.get(gram);
+                if (gramPostings == null) {
+                    gramPostings = new Postings();
+                    postings.put(gram, gramPostings);
+                }
+                gramPostings.add(slot);
+            }
+        }
+        modificationCount++;
+    }
+
+    /**
+     * Removes a key from this index.  Removing a key not indexed does
+     * nothing.
+     * @param key the key to remove
+     */
+    public synchronized void remove(String key) {
+        Integer slot = slots.remove(key);
+        if (slot == null) {
+            return;
+        }
+        // posting lists keep the slot until the index is compacted
+        keys.set(slot, null);
+        texts.set(slot, null);
+        removedCount++;
+        modificationCount++;
+        if (removedCount > 1024 && removedCount > slots.size()) {
+            compact();
+        }
+    }
+
+    /**
+     * Removes all keys from this index.
+     */
+    public synchronized void clear() {
+        keys.clear();
+        texts.clear();
+        slots.clear();
+        postings.clear();
+        removedCount = 0;
+        modificationCount++;
+    }
+
+    /**
+     * Gets whether a key is indexed.
+     * @param key the key to look for
+     * @return <code>true</code> if the key is indexed
+     */
+    public synchronized boolean contains(String key) {
+        return slots.containsKey(key);
+    }
+
+    /**
+     * Finds the indexed keys found by a text containing the given text.
+     * @param text the text to look for
+     * @param monitor progress monitor checked for cancellation, or
+     *        <code>null</code>
+     * @return the matching keys, in no particular order, or
+     *         <code>null</code> if the search was cancelled
+     */
+    public List<String> find(String text, IProgressMonitor monitor) {
+        List<String> candidateKeys;
+        List<String> candidateTexts;
+        int searchModificationCount;
+        synchronized (this) {
+            searchModificationCount = modificationCount;
+            if (lastMatches != null && lastModificationCount == modificationCount
+                    && text.contains(lastText)) {
+                if (text.equals(lastText)) {
+                    return lastMatches;
+                }
+                candidateKeys = lastMatches;
+                candidateTexts = lastMatchTexts;
+            } else {
+                candidateKeys = new ArrayList<String>();
+                candidateTexts = new ArrayList<String>();
+                collectCandidates(text, candidateKeys, candidateTexts);
+            }
+        }
+        List<String> matches = new ArrayList<String>();
+        List<String> matchTexts = new ArrayList<String>();
+        for (int i = 0; i < candidateKeys.size(); i++) {
+            if (monitor != null && i % CHECK_INTERVAL == 0
+                    && monitor.isCanceled()) {
+                return null;
+            }
+            String candidateText = candidateTexts.get(i);
+            if (candidateText.contains(text)) {
+                matches.add(candidateKeys.get(i));
+                matchTexts.add(candidateText);
+            }
+        }
+        matches = Collections.unmodifiableList(matches);
+        synchronized (this) {
+            if (searchModificationCount == modificationCount) {
+                lastText = text;
+                lastMatches = matches;
+                lastMatchTexts = matchTexts;
+                lastModificationCount = modificationCount;
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Collects the keys whose text may contain the given text: all keys
+     * listed under the rarest trigram of the text, or all keys for texts
+     * too short to hold a trigram.
+     * @param text the text to look for
+     * @param candidateKeys list receiving candidate keys
+     * @param candidateTexts list receiving the texts of candidate keys
+     */
+    private void collectCandidates(String text,
+            List<String> candidateKeys, List<String> candidateTexts) {
+        if (text.length() < GRAM_LENGTH) {
+            for (int slot = 0; slot < keys.size(); slot++) {
+                collectCandidate(slot, candidateKeys, candidateTexts);
+            }
+            return;
+        }
+        Postings rarest = null;
+        for (int i = 0; i + GRAM_LENGTH <= text.length(); i++) {
+            Postings gramPostings =
+                    postings.get(text.substring(i, i + GRAM_LENGTH));
+            if (gramPostings == null) {
+                return;
+            }
+            if (rarest == null || gramPostings.size < rarest.size) {
+                rarest = gramPostings;
+            }
+        }
+        for (int i = 0; i < rarest.size; i++) {
+            collectCandidate(rarest.slots[i], candidateKeys, candidateTexts);
+        }
+    }
+
+    /**
+     * Collects the key held in a slot, unless it was removed.
+     * @param slot the slot
+     * @param candidateKeys list receiving the key
+     * @param candidateTexts list receiving the key text
+     */
+    private void collectCandidate(int slot,
+            List<String> candidateKeys, List<String> candidateTexts) {
+        String key = keys.get(slot);
+        if (key != null) {
+            candidateKeys.add(key);
+            candidateTexts.add(texts.get(slot));
+        }
+    }
+
+    /**
+     * Reindexes the remaining keys, dropping slots of removed keys.
+     */
+    private void compact() {
+        List<String> liveKeys = new ArrayList<String>(slots.size());
+        List<String> liveTexts = new ArrayList<String>(slots.size());
+        for (int slot = 0; slot < keys.size(); slot++) {
+            collectCandidate(slot, liveKeys, liveTexts);
+        }
+        clear();
+        for (int i = 0; i < liveKeys.size(); i++) {
+            add(liveKeys.get(i), liveTexts.get(i));
+        }
+    }
+
+    /**
+     * Growable list of slots.
+     */
+    private static final class Postings {
+        /** Slots. */
+        private int[] slots = new int[4];
+        /** Number of slots used. */
+        private int size;
+
+        /**
+         * Appends a slot.
+         * @param slot the slot to append
+         */
+        private void add(int slot) {
+            if (size == slots.length) {
+                int[] newSlots = new int[size * 2];
+                System.arraycopy(slots, 0, newSlots, 0, size);
+                slots = newSlots;
+            }
+            slots[size++] = slot;
+        }
+    }
+}
@@ -20,13 +20,23 @@
  */
 package com.essiembre.eclipse.rbe.model.tree;
 
+import java.util.AbstractSet;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
 
+import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.jface.viewers.ViewerFilter;
 
 import com.essiembre.eclipse.rbe.model.DeltaEvent;
@@ -45,9 +55,20 @@ import com.essiembre.eclipse.rbe.model.tree.updater.KeyTreeUpdater;
 public class KeyTree extends Model implements IKeyTreeVisitable {
 
     /** Caching of key tree items (key=ID; value=KeyTreeItem). **/
-    private final Map<String, KeyTreeItem> keyItemsCache = new TreeMap<String, KeyTreeItem>();
+    private final NavigableMap<String, KeyTreeItem> keyItemsCache = 
+            new TreeMap<String, KeyTreeItem>();
     /** Items found at root level. */
     private final Set<KeyTreeItem> rootKeyItems = new TreeSet<KeyTreeItem>();
+    /** Keys of a flat tree, used instead of the item cache and root items
+     *  when the updater is flat, <code>null</code> otherwise. */
+    private FlatKeyList flatKeys;
+    /** Index of key item IDs, for filtering. */
+    private final KeyIndex keyIndex = new KeyIndex();
+    /** Indexes of keys by value, for filtering (key=Locale; value=KeyIndex). */
+    private final Map<Locale, KeyIndex> valueIndexes = 
+            new HashMap<Locale, KeyIndex>();
+    /** Count of bundle value changes, guarded by the value indexes lock. */
+    private int valueChangeCount;
     /** Updater responsible for tree changes. */
     private KeyTreeUpdater updater;
     /** Bundle group used to build the tree. */
@@ -64,12 +85,18 @@ public class KeyTree extends Model implements IKeyTreeVisitable {
         super();
         this.bundleGroup = bundleGroup;
         this.updater = updater;
+        this.flatKeys = updater.isFlat() ? new FlatKeyList(this) : null;
         
         // Set listeners
         bundleGroup.addListener(new IDeltaListener() {
             @Override
             public void add(DeltaEvent event) {
                 initBundle((Bundle) event.receiver());
+                updater.bundleAdded();
+                refreshStatus();
+                for (String key : bundleGroup.getKeys()) {
+                    updateKeyShown(key);
+                }
             }
             @Override
             public void remove(DeltaEvent event) {
@@ -96,28 +123,52 @@ public class KeyTree extends Model implements IKeyTreeVisitable {
      * @param bundle the bundle to initialize
      */
     protected void initBundle(final Bundle bundle) {
+        // value index is built on first search
+        synchronized (valueIndexes) {
+            valueChangeCount++;
+            valueIndexes.remove(bundle.getLocale());
+        }
         bundle.addListener(new IDeltaListener() {
             @Override
             public void add(DeltaEvent event) {
                 //TODO figure out how to filter event that do not add keys.
                 //Probably not necessary with plugin rewrite.
-                String key = ((BundleEntry) event.receiver()).getKey();
-                addKey(key);
+                BundleEntry entry = (BundleEntry) event.receiver();
+                String key = entry.getKey();
+                updateValueIndex(bundle.getLocale(), key, entry.getValue());
+                updater.valueChanged(key, null, entry.getValue());
+                if (!updateKeyShown(key)) {
+                    modifyKey(key);
+                }
             }
             @Override
             public void remove(DeltaEvent event) {
-                String key = ((BundleEntry) event.receiver()).getKey();
+                BundleEntry removedEntry = (BundleEntry) event.receiver();
+                String key = removedEntry.getKey();
+                updateValueIndex(bundle.getLocale(), key, null);
+                updater.valueChanged(key, removedEntry.getValue(), null);
                 Collection<BundleEntry> entries = bundleGroup.getBundleEntries(key);
                 if (entries.size() == 0) {
-                    removeKey(((BundleEntry) event.receiver()).getKey());
+                    removeKey(key);
+                } else if (!updateKeyShown(key)) {
+                    modifyKey(key);
                 }
             }
             @Override
             public void modify(DeltaEvent event) {
                 //TODO figure out how to filter event that do not modify keys.
                 //Probably not necessary with plugin rewrite.
-                String key = ((BundleEntry) event.receiver()).getKey();
-                modifyKey(key);
+                BundleEntry oldEntry = (BundleEntry) event.receiver();
+                String key = oldEntry.getKey();
+                // the event holds the replaced entry
+                BundleEntry entry = bundle.getEntry(key);
+                updateValueIndex(bundle.getLocale(), key,
+                        entry == null ? null : entry.getValue());
+                updater.valueChanged(key, oldEntry.getValue(),
+                        entry == null ? null : entry.getValue());
+                if (!updateKeyShown(key)) {
+                    modifyKey(key);
+                }
             }
             @Override
             public void select(DeltaEvent event) {
@@ -125,12 +176,35 @@ public class KeyTree extends Model implements IKeyTreeVisitable {
         });
     }
 
+    /**
+     * Updates the value of a key in the value index of the given locale,
+     * if that index was built already.
+     * @param locale locale of the changed value
+     * @param key key of the changed value
+     * @param value new value, or <code>null</code> if the entry was removed
+     */
+    private void updateValueIndex(Locale locale, String key, String value) {
+        synchronized (valueIndexes) {
+            valueChangeCount++;
+            KeyIndex valueIndex = valueIndexes.get(locale);
+            if (valueIndex != null) {
+                valueIndex.remove(key);
+                if (value != null) {
+                    valueIndex.add(key, value);
+                }
+            }
+        }
+    }
+
     /**
      * Gets a key tree item.
      * @param key key of item to get
      * @return a key tree item
      */
     public KeyTreeItem getKeyTreeItem(String key) {
+        if (flatKeys != null) {
+            return flatKeys.getItem(key);
+        }
         return keyItemsCache.get(key);
     }
     
@@ -144,7 +218,8 @@ public class KeyTree extends Model implements IKeyTreeVisitable {
     }
     
     /**
-     * Gets the key tree item cache.
+     * Gets the key tree item cache.  Flat trees hold their keys in
+     * {@link #getFlatKeys()} instead, and have an empty cache.
      * @return key tree item cache.
      */
     public Map<String, KeyTreeItem> getKeyItemsCache() {
@@ -152,38 +227,218 @@ public class KeyTree extends Model implements IKeyTreeVisitable {
     }
     
     /**
-     * Gets all items contained a the root level of this tree.
+     * Gets the keys of a flat tree.
+     * @return the flat keys, or <code>null</code> if the updater is not flat
+     */
+    public FlatKeyList getFlatKeys() {
+        return flatKeys;
+    }
+    
+    /**
+     * Gets all items contained a the root level of this tree.  For flat
+     * trees, this is a read-only view creating items as iterated.
      * @return a collection of <code>KeyTreeItem</code> objects.
      */
     public Set<KeyTreeItem> getRootKeyItems() {
+        if (flatKeys != null) {
+            return new AbstractSet<KeyTreeItem>() {
+                @Override
+                public Iterator<KeyTreeItem> iterator() {
+                    return new Iterator<KeyTreeItem>() {
+                        private int index;
+                        @Override
+                        public boolean hasNext() {
+                            return index < flatKeys.size();
+                        }
+                        @Override
+                        public KeyTreeItem next() {
+                            if (index >= flatKeys.size()) {
+                                throw new NoSuchElementException();
+                            }
+                            return flatKeys.getItem(index++);
+                        }
+                        @Override
+                        public void remove() {
+                            throw new UnsupportedOperationException();
+                        }
+                    };
+                }
+                @Override
+                public int size() {
+                    return flatKeys.size();
+                }
+            };
+        }
         return rootKeyItems;
     }
+
+    /**
+     * Gets the number of items in this tree.
+     * @return item count
+     */
+    private int getItemCount() {
+        return flatKeys != null ? flatKeys.size() : keyItemsCache.size();
+    }
+
+    /**
+     * Gets whether this tree holds an item for the given key.
+     * @param key the key
+     * @return <code>true</code> if the tree holds the key
+     */
+    private boolean containsKey(String key) {
+        return flatKeys != null 
+                ? flatKeys.contains(key) : keyItemsCache.containsKey(key);
+    }
+
+    /**
+     * Gets the IDs of all items of this tree, in order.
+     * @return item IDs
+     */
+    private List<String> getItemIds() {
+        if (flatKeys != null) {
+            List<String> ids = new ArrayList<String>(flatKeys.size());
+            for (int i = 0; i < flatKeys.size(); i++) {
+                ids.add(flatKeys.getKey(i));
+            }
+            return ids;
+        }
+        return new ArrayList<String>(keyItemsCache.keySet());
+    }
+
+    /**
+     * Gets all items of this tree, in order.  Flat trees create the items
+     * not referenced elsewhere.
+     * @return key tree items
+     */
+    private List<KeyTreeItem> getItems() {
+        if (flatKeys != null) {
+            List<KeyTreeItem> items = 
+                    new ArrayList<KeyTreeItem>(flatKeys.size());
+            for (int i = 0; i < flatKeys.size(); i++) {
+                items.add(flatKeys.getItem(i));
+            }
+            return items;
+        }
+        return new ArrayList<KeyTreeItem>(keyItemsCache.values());
+    }
     
     /**
      * Adds a key to this tree.
      * @param key key to add
      */
     public void addKey(String key) {
+        int itemCount = getItemCount();
         updater.addKey(this, key);
-        fireAdd(keyItemsCache.get(key));
+        KeyTreeItem item = getKeyTreeItem(key);
+        if (item == null) {
+            return;
+        }
+        item.refreshStatus();
+        int addedCount = getItemCount() - itemCount;
+        for (Object indexed = item; indexed instanceof KeyTreeItem
+                && !keyIndex.contains(((KeyTreeItem) indexed).getId());
+                indexed = ((KeyTreeItem) indexed).getParent()) {
+            keyIndex.add(((KeyTreeItem) indexed).getId());
+        }
+        if (addedCount == 0) {
+            fireModify(item);
+            return;
+        }
+        // notify for the topmost item created (new groups included)
+        KeyTreeItem addedItem = item;
+        for (int i = 1; i < addedCount 
+                && addedItem.getParent() instanceof KeyTreeItem; i++) {
+            addedItem = (KeyTreeItem) addedItem.getParent();
+        }
+        fireAdd(addedItem);
     }
     /**
      * Removes a key from this tree.
      * @param key key to remove
      */
     public void removeKey(String key) {
-        Object item = keyItemsCache.get(key);
+        KeyTreeItem item = getKeyTreeItem(key);
         updater.removeKey(this, key);
-        fireRemove(item);
+        if (item == null) {
+            return;
+        }
+        if (getKeyTreeItem(key) == item) {
+            // still holding children
+            item.refreshStatus();
+            fireModify(item);
+            return;
+        }
+        // notify for the topmost item removed (emptied groups included)
+        KeyTreeItem removedItem = item;
+        keyIndex.remove(removedItem.getId());
+        while (removedItem.getParent() instanceof KeyTreeItem) {
+            KeyTreeItem parentItem = (KeyTreeItem) removedItem.getParent();
+            if (keyItemsCache.get(parentItem.getId()) == parentItem) {
+                break;
+            }
+            removedItem = parentItem;
+            keyIndex.remove(removedItem.getId());
+        }
+        fireRemove(removedItem);
     }
     /**
      * Modifies a key on this tree.
      * @param key key to modify
      */
     public void modifyKey(String key) {
-        Object item = keyItemsCache.get(key);
+        KeyTreeItem item = getKeyTreeItem(key);
+        if (item != null) {
+            item.refreshStatus();
+        }
         fireModify(item);
     }
+    /**
+     * Adds or removes a key so this tree only holds the keys its updater
+     * shows.
+     * @param key key to add or remove
+     * @return <code>true</code> if the key was added or removed
+     */
+    private boolean updateKeyShown(String key) {
+        boolean shown = updater.isKeyShown(key);
+        if (shown == containsKey(key)) {
+            return false;
+        }
+        if (shown) {
+            addKey(key);
+        } else {
+            removeKey(key);
+        }
+        return true;
+    }
+    /**
+     * Gets the key tree items whose key starts with the given prefix, in
+     * key order.  Only the range of matching keys is looked at, so the cost
+     * depends on the number of matches rather than the size of the tree.
+     * @param prefix key prefix
+     * @param limit maximum number of items to return, or a negative value
+     *        for no limit
+     * @return matching key tree items (never <code>null</code>)
+     */
+    public List<KeyTreeItem> findByPrefix(String prefix, int limit) {
+        List<KeyTreeItem> items = new ArrayList<KeyTreeItem>();
+        if (flatKeys != null) {
+            for (int i = flatKeys.ceilingIndex(prefix); i < flatKeys.size()
+                    && items.size() != limit
+                    && flatKeys.getKey(i).startsWith(prefix); i++) {
+                items.add(flatKeys.getItem(i));
+            }
+            return items;
+        }
+        for (Map.Entry<String, KeyTreeItem> entry
+                : keyItemsCache.tailMap(prefix, true).entrySet()) {
+            if (items.size() == limit || !entry.getKey().startsWith(prefix)) {
+                break;
+            }
+            items.add(entry.getValue());
+        }
+        return items;
+    }
+
     /**
      * Marks a key as selected on this tree.
      * @param key  key to select.
@@ -191,28 +446,37 @@ public class KeyTree extends Model implements IKeyTreeVisitable {
     public void selectKey(String key) {
         if(key == null) return;
         
-        Object item = keyItemsCache.get(key);
+        Object item = getKeyTreeItem(key);
         if ((selectedKey == null) || (!selectedKey.equals(key))) {
             selectedKey = key;
             fireSelect(item);
         }
     }
+    /**
+     * Marks the key following the currently selected key as selected.
+     */
     public void selectNextKey() {
         String currentKey = getSelectedKey();
-        boolean takeNext = false;
-        String nextKey = null;
-        for (String key : keyItemsCache.keySet()) {
-            if (takeNext) {
-                nextKey = key;
-                break;
-            }
-            if (key.equals(currentKey))
-                takeNext = true;
+        if (currentKey == null || !containsKey(currentKey)) {
+            return;
         }
-        
+        String nextKey = flatKeys != null ? flatKeys.higherKey(currentKey)
+                : keyItemsCache.higherKey(currentKey);
         if (nextKey != null)
             selectKey(nextKey);			
     }
+    /**
+     * Recomputes the missing value and commented status of all items, 
+     * for when bundles are added to the group.
+     */
+    private void refreshStatus() {
+        // flat items not given out compute their status when created
+        Collection<KeyTreeItem> items = flatKeys != null
+                ? flatKeys.getCachedItems() : keyItemsCache.values();
+        for (KeyTreeItem item : items) {
+            item.refreshStatus();
+        }
+    }
     /**
      * Gets the key tree updater.
      * @return key tree updater
@@ -229,6 +493,8 @@ public class KeyTree extends Model implements IKeyTreeVisitable {
         this.updater = updater;
         keyItemsCache.clear();
         rootKeyItems.clear();
+        flatKeys = updater.isFlat() ? new FlatKeyList(this) : null;
+        keyIndex.clear();
         load();        
     }
 
@@ -239,7 +505,7 @@ public class KeyTree extends Model implements IKeyTreeVisitable {
      */
     @Override
     public void accept(IKeyTreeVisitor visitor, Object passAlongArgument) {
-        for (KeyTreeItem keyTreeItem : keyItemsCache.values()) {
+        for (KeyTreeItem keyTreeItem : getItems()) {
             visitor.visitKeyTreeItem(
                     keyTreeItem, passAlongArgument);
         }
@@ -258,22 +524,33 @@ public class KeyTree extends Model implements IKeyTreeVisitable {
      * Loads all key tree items, base on bundle group.
      */
     private final void load() {
-        for (String string : bundleGroup.getKeys()) {
-            /*
-             * Do not call "fireAdd" method from here for extreme performance
-             * improvement.  This is not an addition in the sense that we are
-             * laying out existing keys, not adding any new ones.  We will
-             * refresh the whole tree after we are done looping.
-             */
-            updater.addKey(this, string);
+        /*
+         * Do not call "fireAdd" method from here for extreme performance
+         * improvement.  This is not an addition in the sense that we are
+         * laying out existing keys, not adding any new ones.  We will
+         * refresh the whole tree after we are done looping.
+         */
+        updater.addKeys(this, bundleGroup.getKeys());
+        for (String id : getItemIds()) {
+            keyIndex.add(id);
+        }
+        if (getFilter() != null) {
+            if (filterByValue) {
+                applyValueFilter(getFilter(), filterLocale, 
+                        findKeysWithValue(getFilter(), filterLocale, null));
+            } else {
+                filterKeyItems(getFilter());
+            }
         }
-        if (getFilter() != null)
-            filterKeyItems(getFilter());
         
         fireAdd(this);
     }
     
     private String filter;
+    /** Whether the filter applies to values rather than key IDs. */
+    private boolean filterByValue;
+    /** Locale of the values the filter applies to. */
+    private Locale filterLocale;
     
     /**
      * Returns the key filter that was applied using the last call to {@link #filterKeyItems(String)}
@@ -289,10 +566,139 @@ public class KeyTree extends Model implements IKeyTreeVisitable {
      * @param filter The <code>filter</code> that should be applied to the key items.
      */
     public void filterKeyItems(String filter) {
+        applyFilter(filter, findFilteredKeys(filter, null));
+    }
+    
+    /**
+     * Finds the IDs of key items containing the given <code>filter</code> string, using an index of item IDs.
+     * This method does not change the tree and can be called from any thread, to be followed by a call to
+     * {@link #applyFilter(String, Collection)} from the thread owning the tree.
+     * @param filter The string to be searched in the IDs.
+     * @param monitor Progress monitor checked for cancellation, or <code>null</code>.
+     * @return The matching IDs, or <code>null</code> if cancelled.
+     */
+    public Collection<String> findFilteredKeys(String filter, IProgressMonitor monitor) {
+        return keyIndex.find(filter, monitor);
+    }
+    
+    /**
+     * Finds the keys whose value for the given locale contains the given <code>filter</code> string, using an
+     * index of bundle values kept up to date with bundle changes.  The index of a locale is built by the first
+     * search in that locale, so this method should be called from a background job, though like
+     * {@link #findFilteredKeys(String, IProgressMonitor)} it can be called from any thread.
+     * @param filter The string to be searched in the values.
+     * @param locale The locale of the values to search.
+     * @param monitor Progress monitor checked for cancellation, or <code>null</code>.
+     * @return The matching keys, or <code>null</code> if cancelled.
+     */
+    public Collection<String> findKeysWithValue(String filter, Locale locale, IProgressMonitor monitor) {
+        KeyIndex valueIndex = getValueIndex(locale, monitor);
+        if (valueIndex == null) {
+            return monitor != null && monitor.isCanceled() ? null : Collections.<String>emptyList();
+        }
+        return valueIndex.find(filter, monitor);
+    }
+
+    /**
+     * Gets the value index of the given locale, building it the first time.  The index is built outside of
+     * any lock from a copy of the bundle entries, and built again if a value changed in the meantime.
+     * @param locale The locale of the values to index.
+     * @param monitor Progress monitor checked for cancellation, or <code>null</code>.
+     * @return The value index, or <code>null</code> if cancelled or if there is no bundle for the locale.
+     */
+    private KeyIndex getValueIndex(Locale locale, IProgressMonitor monitor) {
+        while (true) {
+            int changeCount;
+            synchronized (valueIndexes) {
+                KeyIndex valueIndex = valueIndexes.get(locale);
+                if (valueIndex != null) {
+                    return valueIndex;
+                }
+                changeCount = valueChangeCount;
+            }
+            Bundle bundle = bundleGroup.getBundle(locale);
+            if (bundle == null) {
+                return null;
+            }
+            KeyIndex valueIndex = new KeyIndex();
+            for (BundleEntry entry : bundle.getEntrySnapshot()) {
+                if (monitor != null && monitor.isCanceled()) {
+                    return null;
+                }
+                valueIndex.add(entry.getKey(), entry.getValue());
+            }
+            synchronized (valueIndexes) {
+                if (valueChangeCount == changeCount) {
+                    valueIndexes.put(locale, valueIndex);
+                    return valueIndex;
+                }
+            }
+        }
+    }
+    
+    /**
+     * Marks visible the key items found by {@link #findFilteredKeys(String, IProgressMonitor)}, and their parents.
+     * All other key items are marked hidden, unless <code>filter</code> is empty.
+     * @param filter The <code>filter</code> the key items were found with.
+     * @param filteredKeys The IDs of the key items matching the filter.
+     * @return The topmost key items whose visibility changed.
+     */
+    public Collection<KeyTreeItem> applyFilter(String filter, Collection<String> filteredKeys) {
+        this.filterByValue = false;
+        return markVisible(filter, filteredKeys);
+    }
+    
+    /**
+     * Marks visible the key items found by {@link #findKeysWithValue(String, Locale, IProgressMonitor)}, and
+     * their parents.  All other key items are marked hidden, unless <code>filter</code> is empty.
+     * @param filter The <code>filter</code> the keys were found with.
+     * @param locale The locale of the values the keys were found with.
+     * @param filteredKeys The keys having a value matching the filter.
+     * @return The topmost key items whose visibility changed.
+     */
+    public Collection<KeyTreeItem> applyValueFilter(String filter, Locale locale, Collection<String> filteredKeys) {
+        this.filterByValue = true;
+        this.filterLocale = locale;
+        return markVisible(filter, filteredKeys);
+    }
+    
+    /**
+     * Marks visible the given key items and their parents, and all other key items hidden.
+     * @param filter The <code>filter</code> the key items were found with, all items being visible if empty.
+     * @param filteredKeys The IDs of the key items to mark visible.
+     * @return The key items whose visibility changed while the visibility of their parent did not, so a viewer
+     *         only has to add or remove these.
+     */
+    private Collection<KeyTreeItem> markVisible(String filter, Collection<String> filteredKeys) {
         this.filter = filter;
-        for (KeyTreeItem item : rootKeyItems) {
-            item.applyFilter(filter);
+        boolean showAll = filter.length() == 0;
+        if (flatKeys != null) {
+            return flatKeys.setVisibleKeys(showAll ? null : filteredKeys);
+        }
+        Set<KeyTreeItem> visibleItems = new HashSet<KeyTreeItem>();
+        if (!showAll) {
+            for (String key : filteredKeys) {
+                Object item = keyItemsCache.get(key);
+                while (item instanceof KeyTreeItem && visibleItems.add((KeyTreeItem) item)) {
+                    item = ((KeyTreeItem) item).getParent();
+                }
+            }
+        }
+        Set<KeyTreeItem> changedItems = new HashSet<KeyTreeItem>();
+        for (KeyTreeItem item : keyItemsCache.values()) {
+            boolean visible = showAll || visibleItems.contains(item);
+            if (visible != item.isVisible()) {
+                item.setVisible(visible);
+                changedItems.add(item);
+            }
+        }
+        List<KeyTreeItem> topmostItems = new ArrayList<KeyTreeItem>();
+        for (KeyTreeItem item : changedItems) {
+            if (!changedItems.contains(item.getParent())) {
+                topmostItems.add(item);
+            }
         }
+        return topmostItems;
     }
     
     /**
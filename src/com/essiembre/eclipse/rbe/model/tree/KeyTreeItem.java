@@ -20,10 +20,15 @@
  */
 package com.essiembre.eclipse.rbe.model.tree;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
 
+import com.essiembre.eclipse.rbe.model.bundle.BundleEntry;
+import com.essiembre.eclipse.rbe.model.bundle.BundleGroup;
+
 /**
  * Leaf (tree) representation of one or several resource bundle entries sharing
  * the same key.
@@ -32,6 +37,10 @@ import java.util.TreeSet;
  */
 public class KeyTreeItem implements Comparable<KeyTreeItem>, IKeyTreeVisitable {
 
+    /** Children of items without children. */
+    private static final SortedSet<KeyTreeItem> NO_CHILDREN =
+            Collections.unmodifiableSortedSet(new TreeSet<KeyTreeItem>());
+
     /** Parent key tree. */
     private KeyTree keyTree;
     /** Unique identifier (e.g., full key). */
@@ -40,8 +49,16 @@ public class KeyTreeItem implements Comparable<KeyTreeItem>, IKeyTreeVisitable {
     private String name;
     /** Parent item. */
     private Object parent;
-    /** Child items. */
-    private final SortedSet<KeyTreeItem> children = new TreeSet<KeyTreeItem>();
+    /** Child items, created with the first child as most items are leaves. */
+    private SortedSet<KeyTreeItem> children = NO_CHILDREN;
+    /** Number of bundles missing a value for this item key. */
+    private int missingCount;
+    /** Number of bundle entries commented out for this item key. */
+    private int commentedCount;
+    /** Number of nested children missing a value. */
+    private int missingDescendantCount;
+    /** Whether the missing value and commented counts were computed. */
+    private boolean statusKnown;
     
     /**
      * Constructor.
@@ -50,10 +67,27 @@ public class KeyTreeItem implements Comparable<KeyTreeItem>, IKeyTreeVisitable {
      * @param name name
      */
     public KeyTreeItem(KeyTree keyTree, String id, String name) {
+        this(keyTree, id, name, true);
+    }
+
+    /**
+     * Constructor.
+     * @param keyTree associated key tree
+     * @param id unique identifier
+     * @param name name
+     * @param computeStatus <code>false</code> to compute the missing value
+     *        and commented counts when first asked for, which is only
+     *        possible for items without parent items
+     */
+    /*default*/ KeyTreeItem(
+            KeyTree keyTree, String id, String name, boolean computeStatus) {
         super();
         this.keyTree = keyTree;
         this.id = id;
         this.name = name;
+        if (computeStatus) {
+            refreshStatus();
+        }
     }
     
     /**
@@ -80,7 +114,8 @@ public class KeyTreeItem implements Comparable<KeyTreeItem>, IKeyTreeVisitable {
         this.parent = parent;
     }
     /**
-     * Gets the "children" attribute.
+     * Gets the "children" attribute.  Use {@link #addChildren(KeyTreeItem)}
+     * and {@link #removeChildren(KeyTreeItem)} to change it.
      * @return Returns the children.
      */
     public SortedSet<KeyTreeItem> getChildren() {
@@ -126,14 +161,144 @@ public class KeyTreeItem implements Comparable<KeyTreeItem>, IKeyTreeVisitable {
      * @param item child to add
      */
     public void addChildren(KeyTreeItem item) {
-        children.add(item);
+        if (children == NO_CHILDREN) {
+            children = new TreeSet<KeyTreeItem>();
+        }
+        if (children.add(item)) {
+            addMissingDescendants(item.getMissingTotal());
+        }
     }
     /**
      * Removes a child from this item.
      * @param item child to remove
      */
     public void removeChildren(KeyTreeItem item) {
-        children.remove(item);
+        if (children.remove(item)) {
+            addMissingDescendants(-item.getMissingTotal());
+        }
+    }
+
+    /**
+     * Gets the number of bundles missing a value for this item key (no 
+     * entry, or an empty one).  Always zero if this item is not a key.
+     * @return missing value count
+     */
+    public int getMissingCount() {
+        ensureStatus();
+        return missingCount;
+    }
+    /**
+     * Gets the number of bundle entries commented out for this item key.
+     * @return commented entry count
+     */
+    public int getCommentedCount() {
+        ensureStatus();
+        return commentedCount;
+    }
+    /**
+     * Gets the number of nested children missing a value.
+     * @return missing descendant count
+     */
+    public int getMissingDescendantCount() {
+        return missingDescendantCount;
+    }
+    /**
+     * Checks whether the corresponding entries are missing any values.
+     * @return <code>true</code> if missing a value
+     */
+    public boolean isMissingValue() {
+        ensureStatus();
+        return missingCount > 0;
+    }
+    /**
+     * Checks whether the corresponding entries do not miss any values, but
+     * have at least one nested child missing a value.
+     * @return <code>true</code> if only a child is missing a value
+     */
+    public boolean isMissingChildValueOnly() {
+        ensureStatus();
+        return missingCount == 0 && missingDescendantCount > 0;
+    }
+    /**
+     * Checks whether at least one of the corresponding entries is commented.
+     * @return <code>true</code> if one entry is commented
+     */
+    public boolean hasOneCommented() {
+        ensureStatus();
+        return commentedCount > 0;
+    }
+
+    /**
+     * Recomputes the missing value and commented counts of this item from
+     * its bundle entries.  Ancestors are updated if this item missing value
+     * status changed.
+     */
+    public void refreshStatus() {
+        boolean wasMissing = missingCount > 0;
+        statusKnown = true;
+        missingCount = 0;
+        commentedCount = 0;
+        BundleGroup bundleGroup = keyTree.getBundleGroup();
+        if (bundleGroup.isKey(id)) {
+            Collection<BundleEntry> entries = bundleGroup.getBundleEntries(id);
+            missingCount = bundleGroup.getSize() - entries.size();
+            for (BundleEntry entry : entries) {
+                String value = entry.getValue();
+                if (value == null || value.length() == 0) {
+                    missingCount++;
+                }
+                if (entry.isCommented()) {
+                    commentedCount++;
+                }
+            }
+        }
+        if (wasMissing != isMissingValue()) {
+            Object parentItem = parent;
+            if (parentItem instanceof KeyTreeItem
+                    && ((KeyTreeItem) parentItem).children.contains(this)) {
+                ((KeyTreeItem) parentItem).addMissingDescendants(
+                        wasMissing ? -1 : 1);
+            }
+        }
+    }
+
+    /**
+     * Computes the missing value and commented counts if not done yet.
+     */
+    private void ensureStatus() {
+        if (!statusKnown) {
+            refreshStatus();
+        }
+    }
+
+    /**
+     * Gets how many items are missing a value, among this item and its 
+     * nested children.
+     * @return missing item count
+     */
+    private int getMissingTotal() {
+        return missingDescendantCount + (isMissingValue() ? 1 : 0);
+    }
+
+    /**
+     * Adds to the missing descendant count of this item and of its 
+     * ancestors.
+     * @param delta number of descendants to add (may be negative)
+     */
+    private void addMissingDescendants(int delta) {
+        if (delta == 0) {
+            return;
+        }
+        KeyTreeItem item = this;
+        while (true) {
+            item.missingDescendantCount += delta;
+            Object parentItem = item.parent;
+            if (!(parentItem instanceof KeyTreeItem)
+                    || !((KeyTreeItem) parentItem).children.contains(item)) {
+                return;
+            }
+            item = (KeyTreeItem) parentItem;
+        }
     }
     
     /**
@@ -226,4 +391,12 @@ public class KeyTreeItem implements Comparable<KeyTreeItem>, IKeyTreeVisitable {
     public boolean isVisible() {
         return visible;
     }
+    
+    /**
+     * Sets whether this node is visible under the current filter.
+     * @param visible <code>true</code> if this node is visible
+     */
+    /*default*/ void setVisible(boolean visible) {
+        this.visible = visible;
+    }
 }
@@ -20,14 +20,15 @@
  */
 package com.essiembre.eclipse.rbe.model.tree.updater;
 
-import java.util.Map;
+import java.util.Collection;
 
 import com.essiembre.eclipse.rbe.model.tree.KeyTree;
-import com.essiembre.eclipse.rbe.model.tree.KeyTreeItem;
 
 /**
  * Contains update instructions on how to update a "flat" key tree
- * (no children).
+ * (no children).  Keys are held by the compact
+ * {@link com.essiembre.eclipse.rbe.model.tree.FlatKeyList} of the tree,
+ * which creates items only when asked for.
  * @author Pascal Essiembre (essiembre@users.sourceforge.net)
  * @version $Author$ $Revision$ $Date$
  */
@@ -40,18 +41,31 @@ public class FlatKeyTreeUpdater extends KeyTreeUpdater {
         super();
     }
     
+    /**
+     * @see com.essiembre.eclipse.rbe.model.tree.updater.KeyTreeUpdater
+     *         #isFlat()
+     */
+    @Override
+    public boolean isFlat() {
+        return true;
+    }
+
     /**
      * @see com.essiembre.eclipse.rbe.model.tree.updater.KeyTreeUpdater#addKey(
      *         com.essiembre.eclipse.rbe.model.tree.KeyTree, java.lang.String)
      */
     @Override
     public void addKey(KeyTree keyTree, String key) {
-        Map<String, KeyTreeItem> keyCache = keyTree.getKeyItemsCache();
-        if (!keyCache.containsKey(key)) {
-            KeyTreeItem item = new KeyTreeItem(keyTree, key, key);
-            item.setParent(keyTree);
-            keyTree.getRootKeyItems().add(item);
-            keyCache.put(key, item);
-        }
+        keyTree.getFlatKeys().add(key);
+    }
+
+    /**
+     * @see com.essiembre.eclipse.rbe.model.tree.updater.KeyTreeUpdater
+     *         #addKeys(com.essiembre.eclipse.rbe.model.tree.KeyTree,
+     *                  java.util.Collection)
+     */
+    @Override
+    public void addKeys(KeyTree keyTree, Collection<String> keys) {
+        keyTree.getFlatKeys().addAll(keys);
     }
 }
@@ -20,8 +20,11 @@
  */
 package com.essiembre.eclipse.rbe.model.tree.updater;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.StringTokenizer;
 
 import com.essiembre.eclipse.rbe.model.tree.KeyTree;
 import com.essiembre.eclipse.rbe.model.tree.KeyTreeItem;
@@ -35,6 +38,8 @@ public class GroupedKeyTreeUpdater extends KeyTreeUpdater {
 
     /** Key group separator. */
     private String separator;
+    /** Shared item names. */
+    private final Map<String, String> names = new HashMap<String, String>();
     
     /**
      * Constructor.
@@ -51,20 +56,81 @@ public class GroupedKeyTreeUpdater extends KeyTreeUpdater {
      */
     @Override
     public void addKey(KeyTree keyTree, String key) {
+        addKey(keyTree, key, new ArrayList<KeyTreeItem>());
+    }
+
+    /**
+     * Adds keys in sorted order: items of the groups shared with the 
+     * previous key are reused without being looked up.
+     * @see com.essiembre.eclipse.rbe.model.tree.updater.KeyTreeUpdater
+     *         #addKeys(com.essiembre.eclipse.rbe.model.tree.KeyTree,
+     *                  java.util.Collection)
+     */
+    @Override
+    public void addKeys(KeyTree keyTree, Collection<String> keys) {
+        List<KeyTreeItem> path = new ArrayList<KeyTreeItem>();
+        for (String key : keys) {
+            addKey(keyTree, key, path);
+        }
+    }
+
+    /**
+     * Adds a key to the key tree.  Like a <code>StringTokenizer</code>, 
+     * any separator character ends a group name and empty names are 
+     * skipped.
+     * @param keyTree key tree on which to add the key
+     * @param key key to add
+     * @param path items of the previously added key, from the root,
+     *        replaced with items of this key
+     */
+    private void addKey(KeyTree keyTree, String key, List<KeyTreeItem> path) {
         Map<String, KeyTreeItem> keyCache = keyTree.getKeyItemsCache();
-        if (!keyCache.containsKey(key)) {
-            StringBuffer idBuf = new StringBuffer();
-            Object parent = keyTree;
-            for (StringTokenizer tokens = new StringTokenizer(key, separator);
-                    tokens.hasMoreTokens();) {
-                String name = tokens.nextToken();
-                if (!(parent instanceof KeyTree)) {
-                    idBuf.append(separator);
+        if (keyCache.containsKey(key)) {
+            return;
+        }
+        Object parent = keyTree;
+        String parentId = null;
+        // whether the ID built so far is the beginning of the key
+        boolean keyPrefix = true;
+        int level = 0;
+        int end = 0;
+        for (int start = 0; start < key.length(); start = end) {
+            if (isSeparator(key.charAt(start))) {
+                end = start + 1;
+                continue;
+            }
+            keyPrefix = keyPrefix && (parentId == null ? start == 0
+                    : start == parentId.length() + separator.length()
+                            && key.startsWith(separator, parentId.length()));
+            end = start + 1;
+            while (end < key.length() && !isSeparator(key.charAt(end))) {
+                end++;
+            }
+            KeyTreeItem item = null;
+            if (level < path.size()) {
+                KeyTreeItem pathItem = path.get(level);
+                String name = pathItem.getName();
+                if (pathItem.getParent() == parent 
+                        && name.length() == end - start
+                        && key.regionMatches(start, name, 0, name.length())) {
+                    item = pathItem;
+                } else {
+                    path.subList(level, path.size()).clear();
                 }
-                idBuf.append(name);
-                String id = idBuf.toString();
-                if (!keyCache.containsKey(id)) {
-                    KeyTreeItem item = new KeyTreeItem(keyTree, id, name);
+            }
+            if (item == null) {
+                String id;
+                if (keyPrefix) {
+                    id = key.substring(0, end);
+                } else if (parentId == null) {
+                    id = key.substring(start, end);
+                } else {
+                    id = parentId + separator + key.substring(start, end);
+                }
+                item = keyCache.get(id);
+                if (item == null) {
+                    item = new KeyTreeItem(keyTree, id, 
+                            getName(key.substring(start, end)));
                     item.setParent(parent);
                     if (parent instanceof KeyTree) {
                         keyTree.getRootKeyItems().add(item);
@@ -72,12 +138,40 @@ public class GroupedKeyTreeUpdater extends KeyTreeUpdater {
                         ((KeyTreeItem) parent).addChildren(item);
                     }
                     keyCache.put(id, item);
-                    parent = item;
-                } else {
-                    parent = keyCache.get(id);
                 }
+                path.add(item);
             }
+            parent = item;
+            parentId = item.getId();
+            level++;
+        }
+        if (level < path.size()) {
+            path.subList(level, path.size()).clear();
+        }
+    }
+
+    /**
+     * Gets whether a character separates key groups.
+     * @param c the character
+     * @return <code>true</code> for a separator character
+     */
+    private boolean isSeparator(char c) {
+        return separator.indexOf(c) != -1;
+    }
+
+    /**
+     * Gets a shared instance of an item name, as the same group names are
+     * found in many keys.
+     * @param name item name
+     * @return shared name
+     */
+    private String getName(String name) {
+        String sharedName = names.get(name);
+        if (sharedName == null) {
+            names.put(name, name);
+            sharedName = name;
         }
+        return sharedName;
     }
 
     /**
@@ -25,18 +25,26 @@ import com.essiembre.eclipse.rbe.model.bundle.BundleEntry;
 import com.essiembre.eclipse.rbe.model.bundle.BundleGroup;
 import com.essiembre.eclipse.rbe.model.tree.KeyTree;
 
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Iterator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 
 /**
  * An update which filters entries where at least one isn't available.
+ * The number of bundles holding a value is kept for each key and updated
+ * as values change, so the key tree can add or remove keys as they become
+ * incomplete or complete.
  */
 public class IncompletionUpdater extends KeyTreeUpdater {
 
     
     private KeyTreeUpdater   delegation  ;
     private BundleGroup      bundlegroup ;
+    /** Number of bundles holding a value, per key. */
+    private Map<String, Integer> valuecounts = new HashMap<String, Integer>();
     
 
     /**
@@ -58,24 +66,124 @@ public class IncompletionUpdater extends KeyTreeUpdater {
      */
     @Override
     public void addKey(KeyTree keytree, String key) {
-        Collection<BundleEntry> entries  = bundlegroup.getBundleEntries(key);
-        int        count    = 0;
-        Iterator<BundleEntry>   iterator = entries.iterator();
-        while(iterator.hasNext()) {
-            Object val = iterator.next();
-            if(val instanceof BundleEntry) {
-                BundleEntry entry = (BundleEntry) val;
-                String      value = entry.getValue();
-                if((value != null) && (value.length() > 0)) {
-                    count++;
-                }
-            }
-        }
         // we only delegate entries in case there are some incomplete ones
-        if (count < bundlegroup.getBundleCount()) {
+        if (isKeyShown(key)) {
             delegation.addKey(keytree, key);
         }
     }
     
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void addKeys(KeyTree keytree, Collection<String> keys) {
+        List<String> incomplete = new ArrayList<String>();
+        for (String key : keys) {
+            if (isKeyShown(key)) {
+                incomplete.add(key);
+            }
+        }
+        delegation.addKeys(keytree, incomplete);
+    }
+    
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void removeKey(KeyTree keytree, String key) {
+        if (!bundlegroup.isKey(key)) {
+            valuecounts.remove(key);
+        }
+        super.removeKey(keytree, key);
+    }
+    
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isFlat() {
+        return delegation.isFlat();
+    }
+    
+
+    /**
+     * Returns <code>true</code> if at least one bundle has no value for
+     * the key.
+     * 
+     * @param key   The key to check.
+     * 
+     * @return   true <=> The key is incomplete.
+     */
+    @Override
+    public boolean isKeyShown(String key) {
+        return getValueCount(key) < bundlegroup.getBundleCount();
+    }
+    
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void valueChanged(String key, String oldValue, String newValue) {
+        Integer count = valuecounts.get(key);
+        if (count == null) {
+            // not counted yet, so it will be counted with the new value
+            return;
+        }
+        int delta = (hasValue(newValue) ? 1 : 0) - (hasValue(oldValue) ? 1 : 0);
+        if (delta != 0) {
+            valuecounts.put(key, count + delta);
+        }
+    }
+    
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void bundleAdded() {
+        // the new bundle may hold values for any key
+        valuecounts.clear();
+    }
+    
+
+    /**
+     * Returns the number of bundles holding a value for a key, counting
+     * them the first time the key is asked for.
+     * 
+     * @param key   The key whose values have to be counted.
+     * 
+     * @return   The number of bundles holding a value.
+     */
+    private int getValueCount(String key) {
+        Integer count = valuecounts.get(key);
+        if (count == null) {
+            int values = 0;
+            for (BundleEntry entry : bundlegroup.getBundleEntries(key)) {
+                if (hasValue(entry.getValue())) {
+                    values++;
+                }
+            }
+            count = values;
+            valuecounts.put(key, count);
+        }
+        return count;
+    }
+    
+
+    /**
+     * Returns <code>true</code> if a value is available.
+     * 
+     * @param value   The value to check. Maybe <code>null</code>.
+     * 
+     * @return   true <=> The value is not empty.
+     */
+    private static boolean hasValue(String value) {
+        return (value != null) && (value.length() > 0);
+    }
+    
     
 } /* ENDCLASS */
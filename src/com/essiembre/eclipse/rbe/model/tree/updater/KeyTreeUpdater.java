@@ -20,6 +20,7 @@
  */
 package com.essiembre.eclipse.rbe.model.tree.updater;
 
+import java.util.Collection;
 import java.util.Map;
 
 import com.essiembre.eclipse.rbe.model.tree.KeyTree;
@@ -46,15 +47,77 @@ public abstract class KeyTreeUpdater {
      */
     public abstract void addKey(KeyTree keyTree, String key);
 
+    /**
+     * Adds keys to the key tree.
+     * @param keyTree key tree on which to add the keys
+     * @param keys keys to add, sorted
+     */
+    public void addKeys(KeyTree keyTree, Collection<String> keys) {
+        for (String key : keys) {
+            addKey(keyTree, key);
+        }
+    }
+
+    /**
+     * Gets whether this updater builds flat trees, whose keys are held by
+     * {@link KeyTree#getFlatKeys()} rather than by one item per key.
+     * Returns <code>false</code> by default.
+     * @return <code>true</code> if the key tree is flat
+     */
+    public boolean isFlat() {
+        return false;
+    }
+
+    /**
+     * Gets whether a key belongs on the key tree.  Updaters showing only
+     * some keys override this method, and are told of value changes through
+     * {@link #valueChanged(String, String, String)} so they can answer
+     * without looking at every bundle.
+     * @param key the key to check
+     * @return <code>true</code> if the key belongs on the key tree
+     */
+    public boolean isKeyShown(String key) {
+        return true;
+    }
+
+    /**
+     * Notifies this updater that the value of a key changed in one bundle.
+     * Does nothing by default.
+     * @param key key whose value changed
+     * @param oldValue previous value, or <code>null</code> if the key was
+     *        added to the bundle
+     * @param newValue new value, or <code>null</code> if the key was
+     *        removed from the bundle
+     */
+    public void valueChanged(String key, String oldValue, String newValue) {
+        // do nothing
+    }
+
+    /**
+     * Notifies this updater that a bundle was added to the bundle group.
+     * Does nothing by default.
+     */
+    public void bundleAdded() {
+        // do nothing
+    }
+
     /**
      * Removes a key from the key tree.
      * @param keyTree key tree from which to remove the key
      * @param key key to remove
      */
     public void removeKey(KeyTree keyTree, String key) {
+        if (keyTree.getFlatKeys() != null) {
+            keyTree.getFlatKeys().remove(key);
+            return;
+        }
         Map<String, KeyTreeItem> keyCache = keyTree.getKeyItemsCache();
         KeyTreeItem item = keyCache.get(key);
         if (item != null) {
+            // keep items still holding children, as a group
+            if (item.getChildren().size() > 0) {
+                return;
+            }
             Object parent = item.getParent();
             if (parent instanceof KeyTree) {
                 ((KeyTree) parent).getRootKeyItems().remove(item);
@@ -67,7 +130,8 @@ public abstract class KeyTreeUpdater {
             if (parent instanceof KeyTreeItem) {
                 KeyTreeItem parentItem = (KeyTreeItem) parent;
                 boolean isKey = 
-                        keyTree.getBundleGroup().isKey(parentItem.getId());
+                        keyTree.getBundleGroup().isKey(parentItem.getId())
+                        && isKeyShown(parentItem.getId());
                 boolean hasChildren = parentItem.getChildren().size() > 0;
                 if (!isKey && ! hasChildren) {
                     removeKey(keyTree, parentItem.getId());
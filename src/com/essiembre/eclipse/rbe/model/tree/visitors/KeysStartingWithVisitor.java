@@ -29,7 +29,10 @@ import com.essiembre.eclipse.rbe.model.tree.KeyTreeVisitorAdapter;
 
 /**
  * Visitor for finding keys starting with the <code>passAlongArgument</code>,
- * which must be a <code>String</code>.
+ * which must be a <code>String</code>.  When visiting a whole
+ * {@link com.essiembre.eclipse.rbe.model.tree.KeyTree}, prefer
+ * {@link com.essiembre.eclipse.rbe.model.tree.KeyTree#findByPrefix(
+ * String, int)} which only looks at matching keys.
  * @author Pascal Essiembre (essiembre@users.sourceforge.net)
  * @version $Author$ $Revision$ $Date$
  */
@@ -34,6 +34,14 @@ public class LevenshteinDistanceAnalyzer implements ProximityAnalyzer {
 
     private static final ProximityAnalyzer INSTANCE =
             new LevenshteinDistanceAnalyzer();
+    /** Distance rows reused by each thread. */
+    private static final ThreadLocal<int[][]> ROWS =
+            new ThreadLocal<int[][]>() {
+        @Override
+        protected int[][] initialValue() {
+            return new int[][] { new int[64], new int[64] };
+        }
+    };
     
     /**
      * Constructor.
@@ -68,27 +76,38 @@ public class LevenshteinDistanceAnalyzer implements ProximityAnalyzer {
 
         return 1d - (distance / maxLength);
     }
-   
-   
+
     /**
-     * Retuns the minimum of three values.
-     * @param a first value
-     * @param b second value
-     * @param c third value
-     * @return lowest value
+     * @see com.essiembre.eclipse.rbe.model.utils.ProximityAnalyzer
+     *      #isSimilar(java.lang.Object, java.lang.Object, double)
      */
-    private int minimum(int a, int b, int c) {
-        int mi;
-
-        mi = a;
-        if (b < mi) {
-            mi = b;
+    @Override
+    public boolean isSimilar(Object obj1, Object obj2, double minProximity) {
+        if (obj1 == null || obj2 == null) {
+            return 0 >= minProximity;
         }
-        if (c < mi) {
-            mi = c;
+        String str1 = obj1.toString();
+        String str2 = obj2.toString();
+        int maxLength = Math.max(str1.length(), str2.length());
+        if (maxLength == 0) {
+            return analyse(str1, str2) >= minProximity;
         }
-        return mi;
-
+        // largest distance still giving the minimum proximity, computed
+        // with the same arithmetic as analyse()
+        int maxDistance = (int) Math.floor((1d - minProximity) * maxLength);
+        maxDistance = Math.max(-1, Math.min(maxDistance, maxLength));
+        while (maxDistance < maxLength && 1d - ((double) (maxDistance + 1)
+                / maxLength) >= minProximity) {
+            maxDistance++;
+        }
+        while (maxDistance >= 0 && 1d - ((double) maxDistance
+                / maxLength) < minProximity) {
+            maxDistance--;
+        }
+        if (maxDistance < 0) {
+            return false;
+        }
+        return distance(str1, str2, maxDistance) <= maxDistance;
     }
 
     /***
@@ -98,68 +117,108 @@ public class LevenshteinDistanceAnalyzer implements ProximityAnalyzer {
      * @return distance
      */
     public int distance(String s, String t) {
-        int d[][]; // matrix
-        int n; // length of s
-        int m; // length of t
-        int i; // iterates through s
-        int j; // iterates through t
-        char s_i; // ith character of s
-        char t_j; // jth character of t
-        int cost; // cost
-
-        // Step 1
+        return distance(s, t, Math.max(s.length(), t.length()));
+    }
 
-        n = s.length();
-        m = t.length();
+    /**
+     * Computes the distance, giving up as soon as it exceeds the given
+     * maximum.  Only the cells of the distance matrix within
+     * <code>maxDistance</code> of the diagonal are computed, one row at a
+     * time, in two rows reused between calls made on the same thread.
+     * @param s source string
+     * @param t target string
+     * @param maxDistance maximum distance of interest
+     * @return distance, or <code>maxDistance + 1</code> if the distance is
+     *         greater than <code>maxDistance</code>
+     */
+    public int distance(String s, String t, int maxDistance) {
+        int n = s.length();
+        int m = t.length();
+        int tooFar = maxDistance + 1;
+        if (Math.abs(n - m) > maxDistance) {
+            return tooFar;
+        }
         if (n == 0) {
             return m;
         }
         if (m == 0) {
             return n;
         }
-        d = new int[n + 1][m + 1];
 
-        // Step 2
-
-        for (i = 0; i <= n; i++) {
-            d[i][0] = i;
-        }
-
-        for (j = 0; j <= m; j++) {
-            d[0][j] = j;
+        int[][] rows = getRows(m + 1);
+        int[] previous = rows[0];
+        int[] current = rows[1];
+        for (int j = 0; j <= m; j++) {
+            previous[j] = j <= maxDistance ? j : tooFar;
         }
-
-        // Step 3
-
-        for (i = 1; i <= n; i++) {
-
-            s_i = s.charAt(i - 1);
-
-            // Step 4
-
-            for (j = 1; j <= m; j++) {
-
-                t_j = t.charAt(j - 1);
-
-                // Step 5
-
-                if (s_i == t_j) {
-                    cost = 0;
-                } else {
-                    cost = 1;
+        for (int i = 1; i <= n; i++) {
+            char s_i = s.charAt(i - 1);
+            int from = Math.max(1, i - maxDistance);
+            int to = Math.min(m, i + maxDistance);
+            current[0] = i <= maxDistance ? i : tooFar;
+            int rowMinimum = from == 1 ? current[0] : tooFar;
+            if (from > 1) {
+                current[from - 1] = tooFar;
+            }
+            for (int j = from; j <= to; j++) {
+                int cost = s_i == t.charAt(j - 1) ? 0 : 1;
+                int d = minimum(previous[j] + 1, current[j - 1] + 1,
+                        previous[j - 1] + cost);
+                if (d > tooFar) {
+                    d = tooFar;
                 }
-
-                // Step 6
-
-                d[i][j] = minimum(d[i - 1][j] + 1, d[i][j - 1] + 1,
-                        d[i - 1][j - 1] + cost);
-
+                current[j] = d;
+                if (d < rowMinimum) {
+                    rowMinimum = d;
+                }
+            }
+            if (to < m) {
+                current[to + 1] = tooFar;
             }
+            if (rowMinimum > maxDistance) {
+                return tooFar;
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[m];
+    }
 
+    /**
+     * Gets the two distance rows of the calling thread, grown to the given
+     * length if needed.
+     * @param length minimum row length
+     * @return two rows
+     */
+    private int[][] getRows(int length) {
+        int[][] rows = ROWS.get();
+        if (rows[0].length < length) {
+            rows[0] = new int[length];
+            rows[1] = new int[length];
         }
+        return rows;
+    }
+   
+   
+    /**
+     * Retuns the minimum of three values.
+     * @param a first value
+     * @param b second value
+     * @param c third value
+     * @return lowest value
+     */
+    private int minimum(int a, int b, int c) {
+        int mi;
 
-        // Step 7
+        mi = a;
+        if (b < mi) {
+            mi = b;
+        }
+        if (c < mi) {
+            mi = c;
+        }
+        return mi;
 
-        return d[n][m];
     }
 }
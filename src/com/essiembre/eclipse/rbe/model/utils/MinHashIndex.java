@@ -0,0 +1,379 @@
+/*
+ * Copyright (C) 2003, 2004  Pascal Essiembre, Essiembre Consultant Inc.
+ * 
+ * This file is part of Essiembre ResourceBundle Editor.
+ * 
+ * Essiembre ResourceBundle Editor is free software; you can redistribute it 
+ * and/or modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * Essiembre ResourceBundle Editor is distributed in the hope that it will be 
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Essiembre ResourceBundle Editor; if not, write to the 
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330, 
+ * Boston, MA  02111-1307  USA
+ */
+package com.essiembre.eclipse.rbe.model.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Locality-sensitive hashing index of texts, used to find the texts likely
+ * to be similar to a given one without comparing it with every text.
+ * Each text is reduced to a MinHash signature of its three-character
+ * shingles.  The signature is cut in bands, and texts sharing a whole band
+ * with another text are candidates for being similar to it.  Texts sharing
+ * about a third of their shingles are almost always found; texts sharing
+ * few shingles rarely are.  Candidates still have to be compared exactly.
+ * @author Pascal Essiembre
+ * @version $Author$ $Revision$ $Date$
+ */
+public class MinHashIndex {
+
+    /** Length of text shingles. */
+    private static final int SHINGLE_LENGTH = 3;
+    /** Number of signature bands. */
+    private static final int BANDS = 16;
+    /** Number of signature values in a band. */
+    private static final int ROWS = 2;
+    /** Seeds of the hash functions, one per signature value. */
+    private static final int[] SEEDS = new int[BANDS * ROWS];
+    static {
+        for (int i = 0; i < SEEDS.length; i++) {
+            SEEDS[i] = mix(0x9E3779B9 * (i + 1)) | 1;
+        }
+    }
+
+    /** Band hashes of indexed keys. */
+    private final Map<String, int[]> bandHashes = new HashMap<String, int[]>();
+    /** Keys sharing a signature band (value=the key when alone, or a list
+     *  of keys). */
+    private final BucketTable buckets = new BucketTable();
+
+    /**
+     * Constructor.
+     */
+    public MinHashIndex() {
+        super();
+    }
+
+    /**
+     * Adds a key to this index, or updates its text if already indexed.
+     * Keys with an empty text are not indexed.
+     * @param key the key to add
+     * @param text the text compared for similarity
+     */
+    public synchronized void add(String key, String text) {
+        remove(key);
+        int[] hashes = getBandHashes(text);
+        if (hashes == null) {
+            return;
+        }
+        bandHashes.put(key, hashes);
+        for (int band = 0; band < BANDS; band++) {
+            long bucketKey = getBucketKey(band, hashes[band]);
+            Object bucket = buckets.get(bucketKey);
+            if (bucket == null) {
+                buckets.put(bucketKey, key);
+            } else if (bucket instanceof String) {
+                KeyList keys = new KeyList();
+                keys.add((String) bucket);
+                keys.add(key);
+                buckets.put(bucketKey, keys);
+            } else {
+                ((KeyList) bucket).add(key);
+            }
+        }
+    }
+
+    /**
+     * Removes a key from this index.  Removing a key not indexed does
+     * nothing.
+     * @param key the key to remove
+     */
+    public synchronized void remove(String key) {
+        int[] hashes = bandHashes.remove(key);
+        if (hashes == null) {
+            return;
+        }
+        for (int band = 0; band < BANDS; band++) {
+            long bucketKey = getBucketKey(band, hashes[band]);
+            Object bucket = buckets.get(bucketKey);
+            if (bucket instanceof String) {
+                buckets.remove(bucketKey);
+            } else {
+                KeyList keys = (KeyList) bucket;
+                keys.remove(key);
+                if (keys.size == 1) {
+                    buckets.put(bucketKey, keys.keys[0]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the indexed keys whose text is likely similar to the given text.
+     * @param text the text to match
+     * @return candidate keys (never <code>null</code>)
+     */
+    public synchronized Set<String> getCandidates(String text) {
+        Set<String> candidates = new HashSet<String>();
+        int[] hashes = getBandHashes(text);
+        if (hashes == null) {
+            return candidates;
+        }
+        for (int band = 0; band < BANDS; band++) {
+            Object bucket = buckets.get(getBucketKey(band, hashes[band]));
+            if (bucket instanceof String) {
+                candidates.add((String) bucket);
+            } else if (bucket != null) {
+                ((KeyList) bucket).addTo(candidates);
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Gets groups of indexed keys likely to be similar: the keys sharing a
+     * signature band.  A key may belong to several groups.  Only the buckets
+     * are looked at, so the cost is about linear in the number of keys.
+     * @return groups of two or more keys
+     */
+    public synchronized Collection<Set<String>> getClusters() {
+        Set<Set<String>> clusters = new HashSet<Set<String>>();
+        for (Object bucket : buckets.values) {
+            if (bucket != null && !(bucket instanceof String)) {
+                Set<String> cluster = new HashSet<String>();
+                ((KeyList) bucket).addTo(cluster);
+                clusters.add(cluster);
+            }
+        }
+        return new ArrayList<Set<String>>(clusters);
+    }
+
+    /**
+     * Computes the MinHash signature of a text, and hashes each of its
+     * bands.
+     * @param text the text
+     * @return the band hashes, or <code>null</code> for an empty text
+     */
+    private static int[] getBandHashes(String text) {
+        int length = text.length();
+        if (length == 0) {
+            return null;
+        }
+        int[] signature = new int[SEEDS.length];
+        Arrays.fill(signature, Integer.MAX_VALUE);
+        int shingleCount = Math.max(1, length - SHINGLE_LENGTH + 1);
+        for (int i = 0; i < shingleCount; i++) {
+            int shingle = 0;
+            for (int j = i; j < Math.min(length, i + SHINGLE_LENGTH); j++) {
+                shingle = 31 * shingle + text.charAt(j);
+            }
+            for (int h = 0; h < SEEDS.length; h++) {
+                int value = mix(shingle * SEEDS[h] + h);
+                if (value < signature[h]) {
+                    signature[h] = value;
+                }
+            }
+        }
+        int[] hashes = new int[BANDS];
+        for (int band = 0; band < BANDS; band++) {
+            int hash = 0;
+            for (int row = band * ROWS; row < (band + 1) * ROWS; row++) {
+                hash = 31 * hash + signature[row];
+            }
+            hashes[band] = hash;
+        }
+        return hashes;
+    }
+
+    /**
+     * Gets the bucket key of a signature band.
+     * @param band the band
+     * @param hash the band hash
+     * @return the bucket key
+     */
+    private static long getBucketKey(int band, int hash) {
+        return ((long) band << 32) | (hash & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Scrambles the bits of a value (MurmurHash3 finalizer).
+     * @param value the value
+     * @return the scrambled value
+     */
+    private static int mix(int value) {
+        int h = value;
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    /**
+     * Growable list of the keys of a bucket.
+     */
+    private static final class KeyList {
+        /** Keys. */
+        private String[] keys = new String[4];
+        /** Number of keys used. */
+        private int size;
+
+        /**
+         * Appends a key.
+         * @param key the key to append
+         */
+        private void add(String key) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+            }
+            keys[size++] = key;
+        }
+
+        /**
+         * Removes a key, moving the last key in its place.
+         * @param key the key to remove
+         */
+        private void remove(String key) {
+            for (int i = 0; i < size; i++) {
+                if (keys[i].equals(key)) {
+                    keys[i] = keys[--size];
+                    keys[size] = null;
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Adds all keys to a collection.
+         * @param collection the collection
+         */
+        private void addTo(Collection<String> collection) {
+            for (int i = 0; i < size; i++) {
+                collection.add(keys[i]);
+            }
+        }
+    }
+
+    /**
+     * Hash table of buckets by bucket key, using open addressing so keys
+     * are not boxed and entries need no node of their own.
+     */
+    private static final class BucketTable {
+        /** Bucket keys, by position. */
+        private long[] keys = new long[64];
+        /** Buckets, by position, <code>null</code> for free positions. */
+        private Object[] values = new Object[64];
+        /** Number of buckets. */
+        private int size;
+
+        /**
+         * Gets a bucket.
+         * @param key bucket key
+         * @return the bucket, or <code>null</code> if none
+         */
+        private Object get(long key) {
+            int mask = values.length - 1;
+            for (int i = position(key, mask); values[i] != null;
+                    i = (i + 1) & mask) {
+                if (keys[i] == key) {
+                    return values[i];
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Adds or replaces a bucket.
+         * @param key bucket key
+         * @param value the bucket
+         */
+        private void put(long key, Object value) {
+            int mask = values.length - 1;
+            int i = position(key, mask);
+            while (values[i] != null) {
+                if (keys[i] == key) {
+                    values[i] = value;
+                    return;
+                }
+                i = (i + 1) & mask;
+            }
+            keys[i] = key;
+            values[i] = value;
+            size++;
+            if (size * 3 > values.length * 2) {
+                resize(values.length * 2);
+            }
+        }
+
+        /**
+         * Removes a bucket.
+         * @param key bucket key
+         */
+        private void remove(long key) {
+            int mask = values.length - 1;
+            int i = position(key, mask);
+            while (values[i] != null && keys[i] != key) {
+                i = (i + 1) & mask;
+            }
+            if (values[i] == null) {
+                return;
+            }
+            values[i] = null;
+            size--;
+            // move back the following buckets which can no longer be
+            // reached from their first position
+            for (int j = (i + 1) & mask; values[j] != null;
+                    j = (j + 1) & mask) {
+                int first = position(keys[j], mask);
+                if (((j - first) & mask) >= ((j - i) & mask)) {
+                    keys[i] = keys[j];
+                    values[i] = values[j];
+                    values[j] = null;
+                    i = j;
+                }
+            }
+        }
+
+        /**
+         * Moves all buckets to tables of the given capacity.
+         * @param capacity new capacity, a power of two
+         */
+        private void resize(int capacity) {
+            long[] oldKeys = keys;
+            Object[] oldValues = values;
+            keys = new long[capacity];
+            values = new Object[capacity];
+            size = 0;
+            for (int i = 0; i < oldValues.length; i++) {
+                if (oldValues[i] != null) {
+                    put(oldKeys[i], oldValues[i]);
+                }
+            }
+        }
+
+        /**
+         * Gets the first position to look for a bucket key at.
+         * @param key bucket key
+         * @param mask table capacity minus one
+         * @return a position
+         */
+        private static int position(long key, int mask) {
+            return mix((int) key ^ (int) (key >>> 32)) & mask;
+        }
+    }
+}
@@ -37,4 +37,15 @@ public interface ProximityAnalyzer {
      * @return proximity level
      */
     double analyse(Object obj1, Object obj2);
+
+    /**
+     * Gets whether two objects have at least the given proximity level.
+     * Analysers may stop as soon as the level can no longer be reached.
+     * @param obj1 first object to analyse
+     * @param obj2 second object to analyse
+     * @param minProximity minimum proximity level
+     * @return <code>true</code> if <code>analyse(obj1, obj2)</code> is
+     *         greater than or equal to <code>minProximity</code>
+     */
+    boolean isSimilar(Object obj1, Object obj2, double minProximity);
 }
@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2003, 2004  Pascal Essiembre, Essiembre Consultant Inc.
+ * 
+ * This file is part of Essiembre ResourceBundle Editor.
+ * 
+ * Essiembre ResourceBundle Editor is free software; you can redistribute it 
+ * and/or modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * Essiembre ResourceBundle Editor is distributed in the hope that it will be 
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Essiembre ResourceBundle Editor; if not, write to the 
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330, 
+ * Boston, MA  02111-1307  USA
+ */
+package com.essiembre.eclipse.rbe.model.utils;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Words of a text, as a sorted array of word identifiers where a word
+ * appears as many times as in the text.  Words are split the same way
+ * <code>WordCountAnalyzer</code> always split them: on line breaks and
+ * single white space characters, dropping trailing empty words.  Two bags
+ * are compared by merging their arrays, without building strings, and must
+ * therefore get their word identifiers from the same table.  The owner of
+ * the compared texts (a bundle group for bundle entries) holds that table,
+ * so it is dropped with them.
+ * @author Pascal Essiembre
+ * @version $Author$ $Revision$ $Date$
+ */
+public final class WordBag {
+
+    /** Identifiers given to words (key=word; value=identifier). */
+    private final Map<String, Integer> wordIdTable;
+    /** Sorted word identifiers. */
+    private final int[] wordIds;
+
+    /**
+     * Constructor.
+     * @param text the text to split in words
+     * @param wordIdTable identifiers given to words, shared by the bags to
+     *        be compared, and locked while adding words
+     */
+    public WordBag(String text, Map<String, Integer> wordIdTable) {
+        super();
+        this.wordIdTable = wordIdTable;
+        int[] ids = new int[8];
+        int count = 0;
+        int nonEmptyCount = 0;
+        int start = 0;
+        int i = 0;
+        boolean split = false;
+        while (i <= text.length()) {
+            boolean end = i == text.length();
+            char c = end ? 0 : text.charAt(i);
+            if (!end && !isSeparator(c)) {
+                i++;
+                continue;
+            }
+            if (end && !split) {
+                // no separator: the whole text is one word, even if empty
+                nonEmptyCount = count + 1;
+            } else if (i > start) {
+                nonEmptyCount = count + 1;
+            }
+            if (count == ids.length) {
+                ids = Arrays.copyOf(ids, count * 2);
+            }
+            ids[count++] = getWordId(text.substring(start, i));
+            if (c == '\r' && i + 1 < text.length()
+                    && text.charAt(i + 1) == '\n') {
+                i++;
+            }
+            split = true;
+            i++;
+            start = i;
+        }
+        // trailing empty words are dropped
+        wordIds = Arrays.copyOf(ids, nonEmptyCount);
+        Arrays.sort(wordIds);
+    }
+
+    /**
+     * Gets the table this bag got its word identifiers from.
+     * @return identifiers given to words
+     */
+    public Map<String, Integer> getWordIdTable() {
+        return wordIdTable;
+    }
+
+    /**
+     * Gets the number of words, repeated words included.
+     * @return number of words
+     */
+    public int size() {
+        return wordIds.length;
+    }
+
+    /**
+     * Counts the words found in both bags, a word repeated in both bags
+     * being counted as many times as it appears in the bag holding it the
+     * least.
+     * @param bag the other bag, using the same word identifier table
+     * @return number of common words
+     */
+    public int countCommonWords(WordBag bag) {
+        if (bag.wordIdTable != wordIdTable) {
+            throw new IllegalArgumentException(
+                    "Word bags use different word identifiers.");
+        }
+        int[] ids1 = wordIds;
+        int[] ids2 = bag.wordIds;
+        int i = 0;
+        int j = 0;
+        int common = 0;
+        while (i < ids1.length && j < ids2.length) {
+            if (ids1[i] < ids2[j]) {
+                i++;
+            } else if (ids1[i] > ids2[j]) {
+                j++;
+            } else {
+                common++;
+                i++;
+                j++;
+            }
+        }
+        return common;
+    }
+
+    /**
+     * Gets whether a character separates words.
+     * @param c the character
+     * @return <code>true</code> if a line break or white space
+     */
+    private static boolean isSeparator(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B'
+                || c == '\f' || c == '\r';
+    }
+
+    /**
+     * Gets the identifier of a word, giving it one if it has none.
+     * @param word the word
+     * @return the word identifier
+     */
+    private int getWordId(String word) {
+        synchronized (wordIdTable) {
+            Integer id = wordIdTable.get(word);
+            if (id == null) {
+                id = wordIdTable.size();
+                wordIdTable.put(word, id);
+            }
+            return id;
+        }
+    }
+}
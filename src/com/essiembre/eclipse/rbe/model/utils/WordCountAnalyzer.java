@@ -20,23 +20,21 @@
  */
 package com.essiembre.eclipse.rbe.model.utils;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * Compares two strings (case insensitive) and returns a proximity level
  * based on how many words there are, and how many words are the same 
  * in both strings.  Non-string objects are converted to strings using
- * the <code>toString()</code> method.
+ * the <code>toString()</code> method, except <code>WordBag</code> objects
+ * which are compared as is, saving to split the same text again and again.
  * @author Pascal Essiembre
  * @version $Author$ $Revision$ $Date$
  */
 public class WordCountAnalyzer implements ProximityAnalyzer {
 
     private static final ProximityAnalyzer INSTANCE = new WordCountAnalyzer();
-    private static final String WORD_SPLIT_PATTERN =
-            "\r\n|\r|\n|\\s"; //$NON-NLS-1$
 
     /**
      * Constructor.
@@ -64,24 +62,87 @@ public class WordCountAnalyzer implements ProximityAnalyzer {
             return 0;
         }
         
-        Collection<String> str1 = new ArrayList<String>(
-                Arrays.asList(obj1.toString().split(WORD_SPLIT_PATTERN)));
-        Collection<String> str2 = new ArrayList<String>(
-                Arrays.asList(obj2.toString().split(WORD_SPLIT_PATTERN)));
+        Map<String, Integer> wordIdTable = getWordIdTable(obj1, obj2);
+        WordBag words1 = toWordBag(obj1, wordIdTable);
+        WordBag words2 = toWordBag(obj2, wordIdTable);
         
-        int maxWords = Math.max(str1.size(), str2.size());
-        if (maxWords == 0) {
+        int maxWords = Math.max(words1.size(), words2.size());
+        if (maxWords == 0 || !isComparable(words1, words2)) {
             return 0;
         }
         
-        int matchedWords = 0;
-        for (String str : str1) {
-            if (str2.remove(str)) {
-                matchedWords++;
-            }
-        }
+        int matchedWords = words1.countCommonWords(words2);
 
         return (double) matchedWords / (double) maxWords;
     }
 
+    /**
+     * @see com.essiembre.eclipse.rbe.model.utils.ProximityAnalyzer
+     *         #isSimilar(java.lang.Object, java.lang.Object, double)
+     */
+    @Override
+    public boolean isSimilar(Object obj1, Object obj2, double minProximity) {
+        if (obj1 == null || obj2 == null) {
+            return 0 >= minProximity;
+        }
+        Map<String, Integer> wordIdTable = getWordIdTable(obj1, obj2);
+        WordBag words1 = toWordBag(obj1, wordIdTable);
+        WordBag words2 = toWordBag(obj2, wordIdTable);
+        if (!isComparable(words1, words2)) {
+            return false;
+        }
+        int maxWords = Math.max(words1.size(), words2.size());
+        int minWords = Math.min(words1.size(), words2.size());
+        // at best, every word of the smaller bag is matched
+        if (maxWords > 0
+                && (double) minWords / (double) maxWords < minProximity) {
+            return false;
+        }
+        return analyse(words1, words2) >= minProximity;
+    }
+
+    /**
+     * Gets the word identifier table to split compared objects with: the
+     * one of a compared <code>WordBag</code>, or a new one only used for
+     * this comparison.
+     * @param obj1 first compared object
+     * @param obj2 second compared object
+     * @return identifiers given to words
+     */
+    private Map<String, Integer> getWordIdTable(Object obj1, Object obj2) {
+        if (obj1 instanceof WordBag) {
+            return ((WordBag) obj1).getWordIdTable();
+        }
+        if (obj2 instanceof WordBag) {
+            return ((WordBag) obj2).getWordIdTable();
+        }
+        return new HashMap<String, Integer>();
+    }
+
+    /**
+     * Gets whether two word bags can be compared, which they can only
+     * when they got their word identifiers from the same table.  Bags
+     * which cannot are reported as having no common words.
+     * @param words1 first word bag
+     * @param words2 second word bag
+     * @return <code>true</code> if the bags share their word identifiers
+     */
+    private boolean isComparable(WordBag words1, WordBag words2) {
+        return words1.getWordIdTable() == words2.getWordIdTable();
+    }
+
+    /**
+     * Gets the words of an object.
+     * @param obj a <code>WordBag</code>, or an object whose string
+     *        representation is split in words
+     * @param wordIdTable identifiers given to words
+     * @return words of the object
+     */
+    private WordBag toWordBag(Object obj, Map<String, Integer> wordIdTable) {
+        if (obj instanceof WordBag) {
+            return (WordBag) obj;
+        }
+        return new WordBag(obj.toString(), wordIdTable);
+    }
+
 }
@@ -46,6 +46,9 @@ public final class RBEPreferences {
     /** Should key tree be expanded by default. */
     public static final String KEY_TREE_EXPANDED = 
             "keyTreeExpanded"; //$NON-NLS-1$
+    /** Should key tree only create the items being shown. */
+    public static final String KEY_TREE_VIRTUAL = 
+            "keyTreeVirtual"; //$NON-NLS-1$
     
     /** Should "Generated by" line be added to files. */
     public static final String SHOW_GENERATOR = "showGenerator"; //$NON-NLS-1$
@@ -139,6 +142,10 @@ public final class RBEPreferences {
     public static final String REPORT_SIM_VALUES_PRECISION = 
             "reportSimilarValuesPrecision"; //$NON-NLS-1$
     
+    /** Parse properties files with the legacy, regular expression parser. */
+    public static final String LEGACY_PARSER = 
+            "legacyParser"; //$NON-NLS-1$
+
     /** Don't show the tree within the editor. */
     public static final String NO_TREE_IN_EDITOR =
             "noTreeInEditor"; //$NON-NLS-1$
@@ -242,6 +249,13 @@ public final class RBEPreferences {
     public static boolean getKeyTreeExpanded() {
         return PREFS.getBoolean(KEY_TREE_EXPANDED);
     }
+    /**
+     * Gets whether key tree should only create the items being shown.
+     * @return <code>true</code> if virtual
+     */
+    public static boolean getKeyTreeVirtual() {
+        return PREFS.getBoolean(KEY_TREE_VIRTUAL);
+    }
 
     /**
      * Gets whether to print "Generated By..." comment when generating file.
@@ -413,6 +427,15 @@ public final class RBEPreferences {
         return PREFS.getDouble(REPORT_SIM_VALUES_PRECISION);
     }
 
+    /**
+     * Gets whether to parse properties files with the legacy, line-splitting
+     * and regular expression based parser instead of the single-pass one.
+     * @return <code>true</code> if using the legacy parser
+     */
+    public static boolean getLegacyParser() {
+        return PREFS.getBoolean(LEGACY_PARSER);
+    }
+
     /**
      * Gets whether a tree shall be displayed within the editor or not.
      * @return <code>true</code> A tree shall not be displayed.
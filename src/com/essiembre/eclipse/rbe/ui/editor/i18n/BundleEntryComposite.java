@@ -28,6 +28,10 @@ import java.util.LinkedList;
 import java.util.Locale;
 import java.util.Map;
 
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.jface.dialogs.MessageDialog;
 import org.eclipse.jface.resource.FontRegistry;
 import org.eclipse.jface.text.Document;
@@ -63,9 +67,9 @@ import org.eclipse.ui.PlatformUI;
 import org.eclipse.ui.texteditor.ITextEditor;
 
 import com.essiembre.eclipse.rbe.RBEPlugin;
+import com.essiembre.eclipse.rbe.model.bundle.Bundle;
 import com.essiembre.eclipse.rbe.model.bundle.BundleEntry;
 import com.essiembre.eclipse.rbe.model.bundle.BundleGroup;
-import com.essiembre.eclipse.rbe.model.bundle.visitors.DuplicateValuesVisitor;
 import com.essiembre.eclipse.rbe.model.bundle.visitors.SimilarValuesVisitor;
 import com.essiembre.eclipse.rbe.model.utils.LevenshteinDistanceAnalyzer;
 import com.essiembre.eclipse.rbe.model.utils.ProximityAnalyzer;
@@ -101,8 +105,11 @@ public class BundleEntryComposite extends Composite {
     /*default*/ String activeKey;
     /*default*/ String textBeforeUpdate;
 
-    /*default*/ DuplicateValuesVisitor duplVisitor;
-    /*default*/ SimilarValuesVisitor similarVisitor;
+    /*default*/ Collection<BundleEntry> duplicates;
+    /*default*/ Collection<BundleEntry> similars;
+
+    /** Job looking for duplicate and similar values of the active key. */
+    private final ValueCheckJob valueCheckJob = new ValueCheckJob();
     
    
     private FocusListener internalFocusListener = new FocusListener() {
@@ -187,6 +194,7 @@ public class BundleEntryComposite extends Composite {
      */
     @Override
     public void dispose() {
+        valueCheckJob.cancel();
         super.dispose();
         boldFont.dispose();
         smallFont.dispose();
@@ -231,6 +239,11 @@ public class BundleEntryComposite extends Composite {
         
         IDocument document = new Document();
         
+        valueCheckJob.cancel();
+        duplicates = null;
+        similars = null;
+        duplButton.setVisible(false);
+        simButton.setVisible(false);
         if (key != null && bundleGroup.isKey(key)) {
             BundleEntry bundleEntry = bundleGroup.getBundleEntry(locale, key);
             SourceEditor sourceEditor = resourceManager.getSourceEditor(locale);
@@ -245,15 +258,20 @@ public class BundleEntryComposite extends Composite {
             commentedCheckbox.setEnabled(!sourceEditor.isReadOnly());
             textBox.setEnabled(!sourceEditor.isReadOnly());
             gotoButton.setEnabled(true);
-            if (RBEPreferences.getReportDuplicateValues()) {
-                findDuplicates(bundleEntry);
-            } else {
-                duplVisitor = null;
-            }
+            boolean reportDuplicates = 
+                    RBEPreferences.getReportDuplicateValues();
+            ProximityAnalyzer analyzer = null;
             if (RBEPreferences.getReportSimilarValues()) {
-                findSimilar(bundleEntry);
-            } else {
-                similarVisitor = null;
+                if (RBEPreferences.getReportSimilarValuesLevensthein()) {
+                    analyzer = LevenshteinDistanceAnalyzer.getInstance();
+                } else {
+                    analyzer = WordCountAnalyzer.getInstance();
+                }
+            }
+            if (bundleEntry != null 
+                    && (reportDuplicates || analyzer != null)) {
+                valueCheckJob.setEntry(bundleEntry, reportDuplicates, analyzer);
+                valueCheckJob.schedule();
             }
         } else {
             commentedCheckbox.setSelection(false);
@@ -261,45 +279,12 @@ public class BundleEntryComposite extends Composite {
             document.set("");
             textBox.setEnabled(false);
             gotoButton.setEnabled(false);
-            duplButton.setVisible(false);
-            simButton.setVisible(false);
         }
         
         textViewer.setDocument(document);		
         resetCommented();
     }
 
-    private void findSimilar(BundleEntry bundleEntry) {
-        ProximityAnalyzer analyzer;
-        if (RBEPreferences.getReportSimilarValuesLevensthein()) {
-            analyzer = LevenshteinDistanceAnalyzer.getInstance();
-        } else {
-            analyzer = WordCountAnalyzer.getInstance();
-        }
-        BundleGroup bundleGroup = resourceManager.getBundleGroup();
-        if (similarVisitor == null) {
-            similarVisitor = new SimilarValuesVisitor();
-        }
-        similarVisitor.setProximityAnalyzer(analyzer);
-        similarVisitor.clear();
-        bundleGroup.getBundle(locale).accept(similarVisitor, bundleEntry);
-        if (duplVisitor != null) {
-            similarVisitor.getSimilars().removeAll(duplVisitor.getDuplicates());
-        }
-        simButton.setVisible(similarVisitor.getSimilars().size() > 0);
-    }
-
-    private void findDuplicates(BundleEntry bundleEntry) {
-        BundleGroup bundleGroup = resourceManager.getBundleGroup();
-        if (duplVisitor == null) {
-            duplVisitor = new DuplicateValuesVisitor();
-        }
-        duplVisitor.clear();
-        bundleGroup.getBundle(locale).accept(duplVisitor, bundleEntry);
-        duplButton.setVisible(duplVisitor.getDuplicates().size() > 0);
-    }
-
-
     /**
      * Creates the text field label, icon, and commented check box.
      */
@@ -341,7 +326,7 @@ public class BundleEntryComposite extends Composite {
                         "dialog.similar.body", activeKey, //$NON-NLS-1$
                         UIUtils.getDisplayName(locale));
                 body += "\n\n"; //$NON-NLS-1$
-                for (BundleEntry bundleEntry : similarVisitor.getSimilars()) {
+                for (BundleEntry bundleEntry : similars) {
                     body += "        " //$NON-NLS-1$
                         + bundleEntry.getKey()
                         + "\n"; //$NON-NLS-1$
@@ -369,7 +354,7 @@ public class BundleEntryComposite extends Composite {
                         "dialog.identical.body", activeKey, //$NON-NLS-1$
                         UIUtils.getDisplayName(locale));
                 body += "\n\n"; //$NON-NLS-1$
-                for (BundleEntry bundleEntry : duplVisitor.getDuplicates()) {
+                for (BundleEntry bundleEntry : duplicates) {
                     body += "        " //$NON-NLS-1$
                         + bundleEntry.getKey()
                         + "\n"; //$NON-NLS-1$
@@ -851,6 +836,106 @@ public class BundleEntryComposite extends Composite {
         }
         return SWT.LEFT_TO_RIGHT;
     }
-}
 
+    /**
+     * Background job looking for the entries having a value identical or
+     * similar to the value of the active entry, showing the duplicate and
+     * similar buttons when done.  Results for an entry which is no longer
+     * active are dropped.
+     */
+    private class ValueCheckJob extends Job {
+        /** Number of candidates compared between two cancellation checks. */
+        private static final int CHECK_INTERVAL = 256;
+        /** Display to show the results with. */
+        private final Display display = getDisplay();
+        /** Entry whose value is checked. */
+        private volatile BundleEntry entry;
+        /** Whether to look for duplicate values. */
+        private volatile boolean reportDuplicates;
+        /** Analyzer finding similar values, <code>null</code> to skip. */
+        private volatile ProximityAnalyzer analyzer;
+
+        /**
+         * Constructor.
+         */
+        public ValueCheckJob() {
+            super(RBEPlugin.getString("value.check.job")); //$NON-NLS-1$
+            setSystem(true);
+        }
+
+        /**
+         * Sets the entry to check on next run.
+         * @param entry entry whose value is checked
+         * @param reportDuplicates whether to look for duplicate values
+         * @param analyzer analyzer finding similar values, or
+         *        <code>null</code> not to look for similar values
+         */
+        public void setEntry(BundleEntry entry, boolean reportDuplicates,
+                ProximityAnalyzer analyzer) {
+            this.entry = entry;
+            this.reportDuplicates = reportDuplicates;
+            this.analyzer = analyzer;
+        }
 
+        /**
+         * @see org.eclipse.core.runtime.jobs.Job#run(
+         *         org.eclipse.core.runtime.IProgressMonitor)
+         */
+        @Override
+        protected IStatus run(final IProgressMonitor monitor) {
+            final BundleEntry checkedEntry = entry;
+            ProximityAnalyzer checkedAnalyzer = analyzer;
+            Bundle bundle = 
+                    resourceManager.getBundleGroup().getBundle(locale);
+            if (checkedEntry == null || bundle == null) {
+                return Status.CANCEL_STATUS;
+            }
+            Collection<BundleEntry> duplicateEntries = null;
+            if (reportDuplicates) {
+                duplicateEntries = bundle.getDuplicates(checkedEntry);
+            }
+            Collection<BundleEntry> similarEntries = null;
+            if (checkedAnalyzer != null) {
+                SimilarValuesVisitor visitor = new SimilarValuesVisitor();
+                visitor.setProximityAnalyzer(checkedAnalyzer);
+                int count = 0;
+                for (BundleEntry candidate : bundle.getSimilarCandidates(
+                        checkedEntry, checkedAnalyzer,
+                        RBEPreferences.getReportSimilarValuesPrecision())) {
+                    if (count++ % CHECK_INTERVAL == 0 
+                            && monitor.isCanceled()) {
+                        return Status.CANCEL_STATUS;
+                    }
+                    visitor.visitBundleEntry(candidate, checkedEntry);
+                }
+                similarEntries = visitor.getSimilars();
+                if (duplicateEntries != null) {
+                    similarEntries.removeAll(duplicateEntries);
+                }
+            }
+            if (monitor.isCanceled() || display.isDisposed()) {
+                return Status.CANCEL_STATUS;
+            }
+            final Collection<BundleEntry> foundDuplicates = duplicateEntries;
+            final Collection<BundleEntry> foundSimilars = similarEntries;
+            display.asyncExec(new Runnable() {
+                @Override
+                public void run() {
+                    if (monitor.isCanceled() || isDisposed()
+                            || !checkedEntry.getKey().equals(activeKey)
+                            || resourceManager.getBundleGroup().getBundleEntry(
+                                    locale, activeKey) != checkedEntry) {
+                        return;
+                    }
+                    duplicates = foundDuplicates;
+                    similars = foundSimilars;
+                    duplButton.setVisible(
+                            duplicates != null && duplicates.size() > 0);
+                    simButton.setVisible(
+                            similars != null && similars.size() > 0);
+                }
+            });
+            return Status.OK_STATUS;
+        }
+    }
+}
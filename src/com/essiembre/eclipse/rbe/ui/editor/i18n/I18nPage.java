@@ -20,14 +20,20 @@
  */
 package com.essiembre.eclipse.rbe.ui.editor.i18n;
 
+import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
 
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.jface.operation.IRunnableWithProgress;
 import org.eclipse.jface.text.BadLocationException;
-import org.eclipse.jface.text.Document;
-import org.eclipse.jface.text.FindReplaceDocumentAdapter;
+import org.eclipse.jface.text.IDocument;
 import org.eclipse.jface.text.IFindReplaceTarget;
+import org.eclipse.jface.text.IFindReplaceTargetExtension;
 import org.eclipse.jface.text.IFindReplaceTargetExtension3;
 import org.eclipse.jface.text.IRegion;
 import org.eclipse.jface.viewers.ISelectionChangedListener;
@@ -39,21 +45,24 @@ import org.eclipse.swt.custom.ScrolledComposite;
 import org.eclipse.swt.custom.StyledText;
 import org.eclipse.swt.events.FocusEvent;
 import org.eclipse.swt.events.FocusListener;
+import org.eclipse.swt.graphics.Color;
 import org.eclipse.swt.graphics.Point;
 import org.eclipse.swt.layout.GridLayout;
 import org.eclipse.swt.widgets.Composite;
 import org.eclipse.swt.widgets.Control;
+import org.eclipse.ui.PlatformUI;
 
 import com.essiembre.eclipse.rbe.model.DeltaEvent;
 import com.essiembre.eclipse.rbe.model.IDeltaListener;
-import com.essiembre.eclipse.rbe.model.bundle.Bundle;
 import com.essiembre.eclipse.rbe.model.bundle.BundleEntry;
+import com.essiembre.eclipse.rbe.model.bundle.BundleFinder;
 import com.essiembre.eclipse.rbe.model.bundle.BundleGroup;
 import com.essiembre.eclipse.rbe.model.tree.KeyTree;
 import com.essiembre.eclipse.rbe.model.tree.KeyTreeItem;
 import com.essiembre.eclipse.rbe.model.workbench.RBEPreferences;
 import com.essiembre.eclipse.rbe.ui.editor.i18n.tree.KeyTreeComposite;
 import com.essiembre.eclipse.rbe.ui.editor.resources.ResourceManager;
+import com.essiembre.eclipse.rbe.ui.editor.resources.SourceEditor;
 
 /**
  * Internationalization page where one can edit all resource bundle entries 
@@ -411,7 +420,20 @@ public class I18nPage extends ScrolledComposite {
         
     } /* ENDCLASS */
     
-    private class FindReplaceTarget implements IFindReplaceTarget, IFindReplaceTargetExtension3{
+    private class FindReplaceTarget implements IFindReplaceTarget, IFindReplaceTargetExtension, IFindReplaceTargetExtension3{
+        
+        /** Finder of the last search. */
+        private BundleFinder finder;
+        /** Whether the find/replace dialog is replacing all matches. */
+        private boolean replaceAllMode;
+        /** Matches found for replacing all, in bundle order. */
+        private List<BundleFinder.Match> replaceAllMatches;
+        /** How many of the matches found were replaced. */
+        private int replaceAllCount;
+        /** Replacement text when replacing all. */
+        private String replaceAllString;
+        /** Whether the replacement text may refer to regular expression groups. */
+        private boolean replaceAllRegEx;
         
         @Override
         public int findAndSelect( int widgetOffset, String findString, boolean searchForward, boolean caseSensitive, boolean wholeWord ) {
@@ -421,72 +443,220 @@ public class I18nPage extends ScrolledComposite {
 
         @Override
         public int findAndSelect( int offset, String findString, boolean searchForward, boolean caseSensitive, boolean wholeWord, boolean regExSearch ) {
+            BundleFinder finder = getFinder(findString, caseSensitive, wholeWord, regExSearch);
+            if ( replaceAllMode ) {
+                return findNextToReplace(finder);
+            }
             if ( lastActiveEntry != null ) {
                 StyledText textWidget = lastActiveEntry.getTextViewer().getTextWidget();
-                String text = textWidget.getText();
-                IRegion region = find(text, findString, textWidget.getSelection().x+(searchForward?1:-1), searchForward, caseSensitive, wholeWord, regExSearch);
-                if ( region != null ) {
+                BundleFinder.Match match = finder.find(textWidget.getText(), textWidget.getSelection().x+(searchForward?1:-1), searchForward);
+                if ( match != null ) {
                     focusBundleEntryComposite(lastActiveEntry.locale);
-                    textWidget.setSelection(region.getOffset(), region.getOffset() + region.getLength());
-                    return region.getOffset();
+                    textWidget.setSelection(match.getOffset(), match.getOffset() + match.getLength());
+                    return match.getOffset();
                 }
             }
-            BundleGroup bundleGroup = resourceMediator.getBundleGroup();
-            ArrayList<String> keys = new ArrayList<String>(bundleGroup.getKeys());
-            String activeKey = lastActiveEntry != null ? lastActiveEntry.activeKey : keys.get(0);
-            int activeKeyIndex = Math.max(keys.indexOf(activeKey), 0);
-
-            List<Locale> locales = resourceMediator.getLocales();
-            Locale activeLocale = lastActiveEntry != null ? lastActiveEntry.locale : locales.get(0);
-            int activeLocaleIndex = locales.indexOf(activeLocale) + (searchForward?1:-1);
-
-            for ( int i = 0, length = keys.size(); i < length; i++ ) {
-                String key = keys.get((activeKeyIndex + (searchForward?i:-i)) % length);
-                int j = (i==0?activeLocaleIndex:(searchForward?0:locales.size()-1));
-                while(j<locales.size() && j>= 0) {
-                    Locale locale = locales.get(j);
-                    Bundle bundle = bundleGroup.getBundle(locale);
-                    BundleEntry value = bundle.getEntry(key);
-                    if ( value != null && value.getValue() != null ) {
-                        IRegion region = find(value.getValue(), findString, searchForward?0:value.getValue().length()-1, searchForward, caseSensitive, wholeWord, regExSearch);
-                        if ( region != null ) {
-                            keysComposite.selectKeyTreeItem(key);
-                            focusBundleEntryComposite(locale);
-                            StyledText textWidget = activeEntry.getTextViewer().getTextWidget();
-                            textWidget.setSelection(region.getOffset(), region.getOffset() + region.getLength());
-                            return region.getOffset();
+            final List<Locale> locales = resourceMediator.getLocales();
+            final String activeKey = lastActiveEntry != null ? lastActiveEntry.activeKey : null;
+            final Locale activeLocale = lastActiveEntry != null ? lastActiveEntry.locale : null;
+            final BundleFinder searchFinder = finder;
+            final boolean searchForwardFinal = searchForward;
+            final BundleFinder.Match[] found = new BundleFinder.Match[1];
+            runInBackground(new IRunnableWithProgress() {
+                @Override
+                public void run(IProgressMonitor monitor) {
+                    List<BundleEntry> entries = getSearchedEntries(searchFinder, locales, monitor);
+                    if ( entries == null || entries.isEmpty() ) {
+                        return;
+                    }
+                    int startIndex;
+                    if ( activeKey != null ) {
+                        // start next to the active entry, which was searched above
+                        startIndex = BundleFinder.indexAfter(entries, activeKey, activeLocale, locales);
+                        if ( !searchForwardFinal ) {
+                            startIndex--;
+                            if ( startIndex >= 0 && entries.get(startIndex).getKey().equals(activeKey) 
+                                    && locales.indexOf(entries.get(startIndex).getBundle().getLocale()) == locales.indexOf(activeLocale) ) {
+                                startIndex--;
+                            }
                         }
+                    } else {
+                        startIndex = searchForwardFinal ? 0 : entries.size() - 1;
                     }
-                    if(searchForward) ++j; 
-                    else --j;
+                    found[0] = searchFinder.findNext(entries, startIndex, searchForwardFinal, monitor);
                 }
+            });
+            BundleFinder.Match match = found[0];
+            if ( match == null ) {
+                return -1;
             }
-            return -1;
+            String key = match.getEntry().getKey();
+            if ( keysComposite != null ) {
+                keysComposite.selectKeyTreeItem(key);
+            } else {
+                resourceMediator.getKeyTree().selectKey(key);
+            }
+            focusBundleEntryComposite(match.getEntry().getBundle().getLocale());
+            if ( activeEntry == null ) {
+                return -1;
+            }
+            StyledText textWidget = activeEntry.getTextViewer().getTextWidget();
+            textWidget.setSelection(match.getOffset(), match.getOffset() + match.getLength());
+            return match.getOffset();
+        }
+
+        /**
+         * Gets a finder for the given search, reusing the last one when the search did not change.
+         */
+        private BundleFinder getFinder( String findString, boolean caseSensitive, boolean wholeWord, boolean regExSearch ) {
+            if ( finder == null || !finder.getFindString().equals(findString) 
+                    || finder.isCaseSensitive() != caseSensitive || finder.isWholeWord() != wholeWord
+                    || finder.isRegExSearch() != regExSearch ) {
+                finder = new BundleFinder(findString, caseSensitive, wholeWord, regExSearch);
+            }
+            return finder;
+        }
+
+        /**
+         * Gets the bundle entries to search, in key then locale order.  For plain searches, only the keys having 
+         * a value containing the searched text are looked at, as found by the key tree value indexes.  Since 
+         * the value index of a locale is built by its first search, this is called from the search job.
+         * @return the entries to search, or <code>null</code> if cancelled
+         */
+        private List<BundleEntry> getSearchedEntries( BundleFinder finder, List<Locale> locales, IProgressMonitor monitor ) {
+            BundleGroup bundleGroup = resourceMediator.getBundleGroup();
+            Collection<String> keys;
+            if ( finder.isPlainSearch() ) {
+                Set<String> matchingKeys = new TreeSet<String>();
+                for ( Locale locale : locales ) {
+                    Collection<String> localeKeys = resourceMediator.getKeyTree().findKeysWithValue(
+                            finder.getFindString(), locale, monitor);
+                    if ( localeKeys == null ) {
+                        return null;
+                    }
+                    matchingKeys.addAll(localeKeys);
+                }
+                keys = matchingKeys;
+            } else {
+                keys = bundleGroup.getKeys();
+            }
+            return BundleFinder.getEntries(bundleGroup, keys, locales);
         }
 
-        private IRegion find( String text, String findString, int offset, boolean searchForward, boolean caseSensitive, boolean wholeWord, boolean regExSearch ) {
-            Document document = new Document(text);
-            FindReplaceDocumentAdapter documentAdapter = new FindReplaceDocumentAdapter(document);
+        /**
+         * Runs a search outside the UI thread, showing a busy cursor then a cancellable progress dialog 
+         * if it takes long.
+         */
+        private void runInBackground( IRunnableWithProgress runnable ) {
             try {
-                return documentAdapter.find(offset, findString, searchForward, caseSensitive, wholeWord, regExSearch);
+                PlatformUI.getWorkbench().getProgressService().busyCursorWhile(runnable);
+            } catch ( InvocationTargetException e ) {
+                e.printStackTrace();
+            } catch ( InterruptedException e ) {
+                // cancelled, nothing found
+            }
+        }
+
+        /**
+         * Finds the next match to replace while replacing all.  All matches are found on the first call, and 
+         * replaced in one go once the dialog is done (see {@link #setReplaceAllMode(boolean)}).  Only editable 
+         * locales are searched, so the count of replacements shown by the dialog is right.
+         */
+        private int findNextToReplace( final BundleFinder finder ) {
+            if ( replaceAllMatches == null ) {
+                final List<Locale> locales = new ArrayList<Locale>();
+                for ( Locale locale : resourceMediator.getLocales() ) {
+                    SourceEditor sourceEditor = resourceMediator.getSourceEditor(locale);
+                    if ( sourceEditor != null && !sourceEditor.isReadOnly() ) {
+                        locales.add(locale);
+                    }
+                }
+                final List<List<BundleFinder.Match>> found = new ArrayList<List<BundleFinder.Match>>(1);
+                runInBackground(new IRunnableWithProgress() {
+                    @Override
+                    public void run(IProgressMonitor monitor) {
+                        List<BundleEntry> entries = getSearchedEntries(finder, locales, monitor);
+                        if ( entries != null ) {
+                            found.add(finder.findAll(entries, monitor));
+                        }
+                    }
+                });
+                replaceAllMatches = found.isEmpty() || found.get(0) == null 
+                        ? new ArrayList<BundleFinder.Match>() : found.get(0);
+                replaceAllCount = 0;
             }
-            catch ( BadLocationException argh ) {
-                return null;
+            if ( replaceAllCount >= replaceAllMatches.size() ) {
+                return -1;
+            }
+            return replaceAllMatches.get(replaceAllCount).getOffset();
+        }
+
+        /**
+         * Replaces the matches accepted while replacing all, as one batch of bundle changes.
+         */
+        private void replaceAll( List<BundleFinder.Match> matches ) {
+            BundleGroup bundleGroup = resourceMediator.getBundleGroup();
+            bundleGroup.beginBatch();
+            try {
+                int end;
+                for ( int start = 0; start < matches.size(); start = end ) {
+                    BundleEntry entry = matches.get(start).getEntry();
+                    end = start + 1;
+                    while ( end < matches.size() && matches.get(end).getEntry() == entry ) {
+                        end++;
+                    }
+                    Locale locale = entry.getBundle().getLocale();
+                    SourceEditor sourceEditor = resourceMediator.getSourceEditor(locale);
+                    if ( bundleGroup.getBundleEntry(locale, entry.getKey()) != entry
+                            || sourceEditor == null || sourceEditor.isReadOnly() ) {
+                        // changed since it was searched, or not editable
+                        continue;
+                    }
+                    String value = finder.replace(entry.getValue(), matches.subList(start, end), replaceAllString, replaceAllRegEx);
+                    bundleGroup.addBundleEntry(locale, new BundleEntry(
+                            entry.getKey(), value, entry.getComment(), entry.isCommented()));
+                }
+            } finally {
+                bundleGroup.endBatch();
+            }
+            for ( BundleEntryComposite entryComposite : entryComposites ) {
+                entryComposite.refresh(getSelectedKey());
             }
         }
        
         @Override
         public void replaceSelection( String text ) {
-            // replaced by replaceSelection(.,.)
+            replaceSelection(text, false);
         }
         @Override
         public void replaceSelection( String text, boolean regExReplace ) {
-          
+            if ( replaceAllMode ) {
+                if ( replaceAllMatches != null && replaceAllCount < replaceAllMatches.size() ) {
+                    replaceAllString = text;
+                    replaceAllRegEx = regExReplace;
+                    replaceAllCount++;
+                }
+                return;
+            }
+            if ( activeEntry == null || finder == null ) {
+                return;
+            }
+            StyledText textWidget = activeEntry.getTextViewer().getTextWidget();
+            IDocument document = activeEntry.getTextViewer().getDocument();
+            Point selection = textWidget.getSelection();
+            String replacement = finder.getReplacement(document.get(), selection.x, text, regExReplace);
+            try {
+                document.replace(selection.x, selection.y - selection.x, replacement);
+            } catch ( BadLocationException e ) {
+                return;
+            }
+            textWidget.setSelection(selection.x, selection.x + replacement.length());
+            activeEntry.updateBundleOnChanges();
         }
 
         @Override
         public boolean isEditable() {
-            return false;
+            return lastActiveEntry == null || lastActiveEntry.getTextViewer().getTextWidget().isEnabled();
         }
 
         @Override
@@ -504,6 +674,55 @@ public class I18nPage extends ScrolledComposite {
             return true;
         }
 
- 
+        @Override
+        public void beginSession() {
+        }
+
+        @Override
+        public void endSession() {
+        }
+
+        @Override
+        public IRegion getScope() {
+            return null;
+        }
+
+        @Override
+        public void setScope( IRegion scope ) {
+        }
+
+        @Override
+        public Point getLineSelection() {
+            return getSelection();
+        }
+
+        @Override
+        public void setSelection( int offset, int length ) {
+            if ( activeEntry != null ) {
+                activeEntry.getTextViewer().setSelectedRange(offset, length);
+            }
+        }
+
+        @Override
+        public void setScopeHighlightColor( Color color ) {
+        }
+
+        @Override
+        public void setReplaceAllMode( boolean replaceAll ) {
+            if ( replaceAll ) {
+                // search values as currently typed
+                for ( BundleEntryComposite entryComposite : entryComposites ) {
+                    entryComposite.updateBundleOnChanges();
+                }
+                replaceAllMode = true;
+                replaceAllMatches = null;
+                return;
+            }
+            replaceAllMode = false;
+            if ( replaceAllMatches != null && replaceAllCount > 0 ) {
+                replaceAll(replaceAllMatches.subList(0, replaceAllCount));
+            }
+            replaceAllMatches = null;
+        }
     }
 }
@@ -22,11 +22,19 @@ package com.essiembre.eclipse.rbe.ui.editor.i18n.tree;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
 
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.jface.viewers.ISelectionChangedListener;
 import org.eclipse.jface.viewers.IStructuredSelection;
 import org.eclipse.jface.viewers.SelectionChangedEvent;
-import org.eclipse.jface.viewers.StructuredSelection;
+import org.eclipse.jface.viewers.TreePath;
 import org.eclipse.jface.viewers.TreeViewer;
 import org.eclipse.jface.viewers.Viewer;
 import org.eclipse.jface.viewers.ViewerFilter;
@@ -44,17 +52,21 @@ import org.eclipse.swt.graphics.Image;
 import org.eclipse.swt.layout.GridData;
 import org.eclipse.swt.layout.GridLayout;
 import org.eclipse.swt.widgets.Button;
+import org.eclipse.swt.widgets.Combo;
 import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Display;
 import org.eclipse.swt.widgets.MessageBox;
 import org.eclipse.swt.widgets.Text;
 
 import com.essiembre.eclipse.rbe.RBEPlugin;
+import com.essiembre.eclipse.rbe.model.DeltaEvent;
+import com.essiembre.eclipse.rbe.model.IDeltaListener;
+import com.essiembre.eclipse.rbe.model.bundle.Bundle;
 import com.essiembre.eclipse.rbe.model.bundle.BundleGroup;
 import com.essiembre.eclipse.rbe.model.tree.KeyTree;
 import com.essiembre.eclipse.rbe.model.tree.KeyTreeItem;
 import com.essiembre.eclipse.rbe.model.tree.updater.FlatKeyTreeUpdater;
 import com.essiembre.eclipse.rbe.model.tree.updater.GroupedKeyTreeUpdater;
-import com.essiembre.eclipse.rbe.model.tree.visitors.KeysStartingWithVisitor;
 import com.essiembre.eclipse.rbe.model.workbench.RBEPreferences;
 import com.essiembre.eclipse.rbe.ui.UIUtils;
 
@@ -65,6 +77,10 @@ import com.essiembre.eclipse.rbe.ui.UIUtils;
  */
 public class KeyTreeComposite extends Composite {
 
+    /** Number of matching key items whose ancestors get expanded when
+     *  filtering. */
+    private static final int MAX_EXPANDED_MATCHES = 200;
+
     /** Image for tree mode toggle button. */
     private Image treeToggleImage;
     /** Image for flat mode toggle button. */
@@ -75,6 +91,8 @@ public class KeyTreeComposite extends Composite {
     
     /** Key Tree Viewer. */
     /*default*/ TreeViewer treeViewer;
+    /** TreeViewer content provider. */
+    private KeyTreeContentProvider contentProvider;
     /** TreeViewer label provider. */
     protected KeyTreeLabelProvider labelProvider;
     
@@ -95,6 +113,38 @@ public class KeyTreeComposite extends Composite {
     private TreeViewerContributor  treeviewerContributor;
     
     private Text filterTextBox;
+    /** Whether to filter on keys or on values of a locale. */
+    private Combo filterModeCombo;
+    /** Locales of the value filter modes, in combo order. */
+    private final List<Locale> filterLocales = new ArrayList<Locale>();
+    /** Listener adding filter modes for new locales. */
+    private final IDeltaListener bundleGroupListener = new IDeltaListener() {
+        @Override
+        public void add(DeltaEvent event) {
+            getDisplay().asyncExec(new Runnable() {
+                @Override
+                public void run() {
+                    if (!filterModeCombo.isDisposed()) {
+                        loadFilterModes();
+                    }
+                }
+            });
+        }
+        @Override
+        public void remove(DeltaEvent event) {
+            // do nothing
+        }
+        @Override
+        public void modify(DeltaEvent event) {
+            // do nothing
+        }
+        @Override
+        public void select(DeltaEvent event) {
+            // do nothing
+        }
+    };
+    /** Job finding the keys matching the filter. */
+    private final FilterJob filterJob = new FilterJob();
     
     /**
      * Constructor.
@@ -161,6 +211,9 @@ public class KeyTreeComposite extends Composite {
     public void dispose() {
         super.dispose();
 
+        filterJob.cancel();
+        keyTree.getBundleGroup().removeListener(bundleGroupListener);
+
         waitCursor.dispose();
         defaultCursor.dispose();
         //        treeviewerContributor.dispose();
@@ -212,7 +265,7 @@ public class KeyTreeComposite extends Composite {
      */
     private void createTopSection() {
         Composite topComposite = new Composite(this, SWT.NONE);
-        GridLayout gridLayout = new GridLayout(2, false);
+        GridLayout gridLayout = new GridLayout(3, false);
         gridLayout.horizontalSpacing = 0;
         gridLayout.verticalSpacing = 0;
         gridLayout.marginWidth = 0;
@@ -226,15 +279,22 @@ public class KeyTreeComposite extends Composite {
         filterTextBox.addModifyListener(new ModifyListener() {
             @Override
             public void modifyText(ModifyEvent e) {
-                keyTree.filterKeyItems(filterTextBox.getText());
-                treeViewer.getControl().setRedraw(false);
-                treeViewer.refresh();
-                if(!filterTextBox.getText().isEmpty())
-                    treeViewer.expandAll();
-                treeViewer.getControl().setRedraw(true);
+                updateFilter();
             }
         });
         
+        filterModeCombo = new Combo(topComposite, SWT.READ_ONLY);
+        filterModeCombo.setToolTipText(
+                RBEPlugin.getString("key.filter.mode")); //$NON-NLS-1$
+        loadFilterModes();
+        filterModeCombo.addSelectionListener(new SelectionAdapter() {
+            @Override
+            public void widgetSelected(SelectionEvent event) {
+                updateFilter();
+            }
+        });
+        keyTree.getBundleGroup().addListener(bundleGroupListener);
+        
         Composite topRightComposite = new Composite(topComposite, SWT.NONE);
         gridLayout = new GridLayout(2, false);
         gridLayout.horizontalSpacing = 0;
@@ -318,8 +378,18 @@ public class KeyTreeComposite extends Composite {
         gridData.horizontalAlignment = GridData.FILL;
         gridData.grabExcessHorizontalSpace = true;
 
-        treeViewer = new TreeViewer(this, SWT.SINGLE | SWT.BORDER | SWT.V_SCROLL | SWT.H_SCROLL);
-        treeViewer.setContentProvider(new KeyTreeContentProvider());
+        int treeStyle = SWT.SINGLE | SWT.BORDER | SWT.V_SCROLL | SWT.H_SCROLL;
+        if (RBEPreferences.getKeyTreeVirtual()) {
+            treeStyle |= SWT.VIRTUAL;
+            contentProvider = new LazyKeyTreeContentProvider();
+        } else {
+            contentProvider = new KeyTreeContentProvider();
+        }
+        treeViewer = new TreeViewer(this, treeStyle);
+        treeViewer.setContentProvider(contentProvider);
+        if (!(contentProvider instanceof LazyKeyTreeContentProvider)) {
+            treeViewer.setComparator(new KeyTreeItemComparator());
+        }
         labelProvider = new KeyTreeLabelProvider();
         treeViewer.setLabelProvider(labelProvider);
         treeViewer.setUseHashlookup(true);
@@ -384,7 +454,11 @@ public class KeyTreeComposite extends Composite {
 //                return true;
             }
         };
-        treeViewer.addFilter(filter);
+        if (contentProvider instanceof LazyKeyTreeContentProvider) {
+            ((LazyKeyTreeContentProvider) contentProvider).addFilter(filter);
+        } else {
+            treeViewer.addFilter(filter);
+        }
         
         treeviewerContributor = new TreeViewerContributor(keyTree, treeViewer);
         treeviewerContributor.createControl(this);
@@ -446,10 +520,9 @@ public class KeyTreeComposite extends Composite {
                     addButton.setEnabled(true);
                 }
                 if ( key.length() > 0 && !key.equals(getSelectedKey()) ) {
-                    KeysStartingWithVisitor visitor = new KeysStartingWithVisitor();
-                    keyTree.accept(visitor, key);
-                    KeyTreeItem item = visitor.getKeyTreeItem();
-                    if ( item != null ) {
+                    List<KeyTreeItem> items = keyTree.findByPrefix(key, 1);
+                    if ( !items.isEmpty() ) {
+                        KeyTreeItem item = items.get(0);
                         syncAddTextBox = false;
                         selectKeyTreeItem(item);
      
@@ -462,6 +535,111 @@ public class KeyTreeComposite extends Composite {
         });
     }
     
+    /**
+     * Fills the filter mode combo: filtering by key, then by value for
+     * each locale of the bundle group.
+     */
+    /*default*/ void loadFilterModes() {
+        Locale selectedLocale = getFilterLocale();
+        boolean keyMode = filterModeCombo.getSelectionIndex() <= 0;
+        filterLocales.clear();
+        filterModeCombo.removeAll();
+        filterModeCombo.add(
+                RBEPlugin.getString("key.filter.mode.key")); //$NON-NLS-1$
+        for (Iterator<Bundle> iter = keyTree.getBundleGroup().iterator();
+                iter.hasNext();) {
+            Locale locale = iter.next().getLocale();
+            filterLocales.add(locale);
+            filterModeCombo.add(RBEPlugin.getString(
+                    "key.filter.mode.value", //$NON-NLS-1$
+                    UIUtils.getDisplayName(locale)));
+        }
+        int index = filterLocales.indexOf(selectedLocale);
+        filterModeCombo.select(keyMode || index == -1 ? 0 : index + 1);
+    }
+
+    /**
+     * Gets the locale of the values to filter on.
+     * @return the locale (which is <code>null</code> for the default
+     *         locale), or <code>null</code> when filtering on keys
+     */
+    private Locale getFilterLocale() {
+        int index = filterModeCombo.getSelectionIndex();
+        if (index <= 0 || index > filterLocales.size()) {
+            return null;
+        }
+        return filterLocales.get(index - 1);
+    }
+
+    /**
+     * Filters the key tree with the filter text, in a background job.
+     */
+    /*default*/ void updateFilter() {
+        filterJob.cancel();
+        String filter = filterTextBox.getText();
+        if (filter.isEmpty()) {
+            // nothing to search, no need to go in background
+            applyFilter(filter, false, null, null);
+        } else {
+            filterJob.setFilter(filter, 
+                    filterModeCombo.getSelectionIndex() > 0, getFilterLocale());
+            filterJob.schedule();
+        }
+    }
+
+    /**
+     * Shows only the key tree items matching the given filter.
+     * @param filter the filter text
+     * @param byValue whether the filter applies to values
+     * @param locale locale of the values the filter applies to
+     * @param filteredKeys IDs of key items matching the filter
+     */
+    /*default*/ void applyFilter(String filter, boolean byValue, 
+            Locale locale, Collection<String> filteredKeys) {
+        Collection<KeyTreeItem> changedItems;
+        if (byValue) {
+            changedItems = 
+                    keyTree.applyValueFilter(filter, locale, filteredKeys);
+        } else {
+            changedItems = keyTree.applyFilter(filter, filteredKeys);
+        }
+        treeViewer.getControl().setRedraw(false);
+        try {
+            contentProvider.refreshVisibility(changedItems);
+            if (!filter.isEmpty()) {
+                expandToMatches(filteredKeys);
+            }
+        } finally {
+            treeViewer.getControl().setRedraw(true);
+        }
+    }
+
+    /**
+     * Expands the ancestors of the first key items matching the filter, so
+     * they can be seen without expanding the whole tree.
+     * @param filteredKeys IDs of key items matching the filter
+     */
+    private void expandToMatches(Collection<String> filteredKeys) {
+        int count = 0;
+        for (String key : filteredKeys) {
+            if (count++ == MAX_EXPANDED_MATCHES) {
+                break;
+            }
+            KeyTreeItem item = keyTree.getKeyTreeItem(key);
+            if (item == null || !(item.getParent() instanceof KeyTreeItem)) {
+                continue;
+            }
+            LinkedList<Object> segments = new LinkedList<Object>();
+            for (Object parent = item.getParent(); 
+                    parent instanceof KeyTreeItem;
+                    parent = ((KeyTreeItem) parent).getParent()) {
+                segments.addFirst(parent);
+            }
+            treeViewer.expandToLevel(
+                    new TreePath(segments.toArray()), 1);
+        }
+    }
+
     /**
      * Adds a key to the tree, based on content from add field.
      */
@@ -485,7 +663,7 @@ public class KeyTreeComposite extends Composite {
      */
     /*default*/ void selectKeyTreeItem(KeyTreeItem item) {
         if (item != null) {
-            treeViewer.setSelection(new StructuredSelection(item), true);
+            contentProvider.selectItem(item, true);
         }
     }
     
@@ -494,4 +672,73 @@ public class KeyTreeComposite extends Composite {
 //		KeyTreeItem currentItem = keyTree.getKeyTreeItem(keyTree.getSelectedKey());
 //		return currentItem.getNextLeaf();
 //	}
+
+    /**
+     * Job searching the keys matching the filter text outside the UI thread.
+     * A new filter text cancels the search in progress.
+     */
+    private class FilterJob extends Job {
+        /** Display to apply the filter with. */
+        private final Display display = getDisplay();
+        /** Filter text to search. */
+        private volatile String filter;
+        /** Whether to search values rather than keys. */
+        private volatile boolean byValue;
+        /** Locale of the values to search. */
+        private volatile Locale locale;
+
+        /**
+         * Constructor.
+         */
+        public FilterJob() {
+            super(RBEPlugin.getString("key.filter.job")); //$NON-NLS-1$
+            setSystem(true);
+        }
+
+        /**
+         * Sets the filter text to search on next run.
+         * @param filter filter text
+         * @param byValue whether to search values rather than keys
+         * @param locale locale of the values to search
+         */
+        public void setFilter(String filter, boolean byValue, Locale locale) {
+            this.filter = filter;
+            this.byValue = byValue;
+            this.locale = locale;
+        }
+
+        /**
+         * @see org.eclipse.core.runtime.jobs.Job#run(
+         *         org.eclipse.core.runtime.IProgressMonitor)
+         */
+        @Override
+        protected IStatus run(final IProgressMonitor monitor) {
+            final String searchedFilter = filter;
+            final boolean searchedValues = byValue;
+            final Locale searchedLocale = locale;
+            final KeyTree searchedTree = keyTree;
+            if (searchedTree == null) {
+                return Status.CANCEL_STATUS;
+            }
+            final Collection<String> filteredKeys = searchedValues
+                    ? searchedTree.findKeysWithValue(
+                            searchedFilter, searchedLocale, monitor)
+                    : searchedTree.findFilteredKeys(searchedFilter, monitor);
+            if (filteredKeys == null || monitor.isCanceled()
+                    || display.isDisposed()) {
+                return Status.CANCEL_STATUS;
+            }
+            display.asyncExec(new Runnable() {
+                @Override
+                public void run() {
+                    if (!monitor.isCanceled() && !isDisposed()
+                            && searchedFilter.equals(filterTextBox.getText())) {
+                        applyFilter(searchedFilter, searchedValues,
+                                searchedLocale, filteredKeys);
+                    }
+                }
+            });
+            return Status.OK_STATUS;
+        }
+    }
 }
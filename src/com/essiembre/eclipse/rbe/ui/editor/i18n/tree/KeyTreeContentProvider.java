@@ -20,12 +20,24 @@
  */
 package com.essiembre.eclipse.rbe.ui.editor.i18n.tree;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.core.runtime.Platform;
 import org.eclipse.jface.viewers.IStructuredSelection;
 import org.eclipse.jface.viewers.ITreeContentProvider;
 import org.eclipse.jface.viewers.StructuredSelection;
 import org.eclipse.jface.viewers.TreeViewer;
 import org.eclipse.jface.viewers.Viewer;
+import org.eclipse.swt.widgets.Control;
+import org.eclipse.swt.widgets.Display;
 
+import com.essiembre.eclipse.rbe.RBEPlugin;
 import com.essiembre.eclipse.rbe.model.DeltaEvent;
 import com.essiembre.eclipse.rbe.model.IDeltaListener;
 import com.essiembre.eclipse.rbe.model.tree.KeyTree;
@@ -41,14 +53,48 @@ public class KeyTreeContentProvider implements
 
     /** Represents empty objects. */
     private static Object[] EMPTY_ARRAY = new Object[0];
+    /** Delay during which tree changes are collected before refreshing. */
+    private static final int REFRESH_DELAY = 50;
+    /** Whether to trace viewer refreshes. */
+    private static final boolean DEBUG_REFRESH =
+            RBEPlugin.getDefault().isDebugging()
+            && "true".equalsIgnoreCase(Platform.getDebugOption( //$NON-NLS-1$
+                    RBEPlugin.ID + "/debug/refresh")); //$NON-NLS-1$
+
     /** Viewer this provided act upon. */
     protected TreeViewer treeViewer;
+
+    /** Whether a viewer refresh is scheduled. */
+    private boolean refreshScheduled;
+    /** Number of tree changes received since last refresh. */
+    private int pendingChangeCount;
+    /** Number of viewer refreshes saved by coalescing tree changes. */
+    private long coalescedRefreshCount;
+    /** Whether the whole viewer must be refreshed. */
+    private boolean refreshAll;
+    /** Items added since last refresh. */
+    private final Set<KeyTreeItem> addedItems = 
+            new LinkedHashSet<KeyTreeItem>();
+    /** Items removed since last refresh. */
+    private final Set<KeyTreeItem> removedItems = 
+            new LinkedHashSet<KeyTreeItem>();
+    /** Elements whose label changed since last refresh. */
+    private final Set<Object> updatedElements = new LinkedHashSet<Object>();
+    /** Applies tree changes to the viewer. */
+    private final Runnable refreshRunnable = new Runnable() {
+        @Override
+        public void run() {
+            applyPendingChanges();
+        }
+    };
     
     /**
      * @see ITreeContentProvider#dispose()
      */
     @Override
-    public void dispose() {}
+    public void dispose() {
+        pendingChangeCount = 0;
+    }
 
     
     /**
@@ -94,7 +140,12 @@ public class KeyTreeContentProvider implements
      */
     @Override
     public boolean hasChildren(Object element) {
-        return getChildren(element).length > 0;
+        if (element instanceof KeyTree) {
+            return !((KeyTree) element).getRootKeyItems().isEmpty();
+        } else if (element instanceof KeyTreeItem) {
+            return !((KeyTreeItem) element).getChildren().isEmpty();
+        }
+        return false;
     }
 
     /**
@@ -110,7 +161,15 @@ public class KeyTreeContentProvider implements
      */
     @Override
     public void add(DeltaEvent event) {
-        treeViewer.refresh(true);
+        Object element = event.receiver();
+        if (element instanceof KeyTreeItem) {
+            KeyTreeItem treeItem = (KeyTreeItem) element;
+            addedItems.add(treeItem);
+            updateAncestors(treeItem);
+        } else {
+            refreshAll = true;
+        }
+        scheduleRefresh();
     }
 
     /**
@@ -118,7 +177,18 @@ public class KeyTreeContentProvider implements
      */
     @Override
     public void remove(DeltaEvent event) {
-        treeViewer.refresh(true);
+        Object element = event.receiver();
+        if (element instanceof KeyTreeItem) {
+            KeyTreeItem treeItem = (KeyTreeItem) element;
+            // items added since last refresh were never shown
+            if (!addedItems.remove(treeItem)) {
+                removedItems.add(treeItem);
+            }
+            updateAncestors(treeItem);
+        } else {
+            refreshAll = true;
+        }
+        scheduleRefresh();
     }
 
     /**
@@ -130,11 +200,30 @@ public class KeyTreeContentProvider implements
         if (treeItem != null) {
             KeyTreeItem currentSelection = getTreeSelection();
             if ((currentSelection == null) || (!treeItem.getId().endsWith(currentSelection.getId()))) {
-                StructuredSelection selection = new StructuredSelection(treeItem);
-                treeViewer.setSelection(selection);
+                selectItem(treeItem, false);
             }
         }
     }
+
+    /**
+     * Selects a tree item in the viewer, once pending tree changes are
+     * applied to it.
+     * @param treeItem the tree item to select
+     * @param reveal <code>true</code> to make the item visible
+     */
+    public void selectItem(KeyTreeItem treeItem, boolean reveal) {
+        applyPendingChanges();
+        setSelection(treeItem, reveal);
+    }
+
+    /**
+     * Selects a tree item in the viewer.
+     * @param treeItem the tree item to select
+     * @param reveal <code>true</code> to make the item visible
+     */
+    protected void setSelection(KeyTreeItem treeItem, boolean reveal) {
+        treeViewer.setSelection(new StructuredSelection(treeItem), reveal);
+    }
     
     
     /**
@@ -152,9 +241,147 @@ public class KeyTreeContentProvider implements
      */
     @Override
     public void modify(DeltaEvent event) {
-        //TODO how to make sure many changes could do a "batch" refresh on tree?
         KeyTreeItem treeItem = (KeyTreeItem) event.receiver();
-        Object parentTreeItem = treeItem.getParent();
-        treeViewer.refresh(parentTreeItem, true);
+        if (treeItem != null) {
+            updatedElements.add(treeItem);
+            updateAncestors(treeItem);
+            scheduleRefresh();
+        }
+    }
+
+    /**
+     * Gets how many viewer refreshes were saved by applying several tree
+     * changes at once.
+     * @return coalesced refresh count
+     */
+    public long getCoalescedRefreshCount() {
+        return coalescedRefreshCount;
+    }
+
+    /**
+     * Marks the labels of the ancestors of a tree item for update, since 
+     * they reflect whether their children are missing values.
+     * @param treeItem the tree item
+     */
+    private void updateAncestors(KeyTreeItem treeItem) {
+        Object parent = treeItem.getParent();
+        while (parent instanceof KeyTreeItem) {
+            updatedElements.add(parent);
+            parent = ((KeyTreeItem) parent).getParent();
+        }
+    }
+
+    /**
+     * Schedules a viewer refresh applying all tree changes received until
+     * then, unless one is already scheduled.
+     */
+    private void scheduleRefresh() {
+        pendingChangeCount++;
+        if (refreshScheduled || treeViewer == null) {
+            return;
+        }
+        Control control = treeViewer.getControl();
+        if (control.isDisposed()) {
+            return;
+        }
+        refreshScheduled = true;
+        Display display = control.getDisplay();
+        if (Display.getCurrent() == display) {
+            display.timerExec(REFRESH_DELAY, refreshRunnable);
+        } else {
+            display.asyncExec(refreshRunnable);
+        }
+    }
+
+    /**
+     * Applies to the viewer all tree changes received since last refresh,
+     * without waiting for the scheduled refresh.
+     */
+    public void applyPendingChanges() {
+        refreshScheduled = false;
+        if (pendingChangeCount == 0) {
+            return;
+        }
+        if (pendingChangeCount > 1) {
+            coalescedRefreshCount += pendingChangeCount - 1;
+        }
+        if (DEBUG_REFRESH) {
+            System.out.println("RBE key tree refresh: " //$NON-NLS-1$
+                    + pendingChangeCount + " change(s), " //$NON-NLS-1$
+                    + coalescedRefreshCount + " coalesced so far"); //$NON-NLS-1$
+        }
+        pendingChangeCount = 0;
+        try {
+            if (treeViewer.getControl().isDisposed()) {
+                return;
+            }
+            if (refreshAll) {
+                refreshAll();
+            } else {
+                if (!removedItems.isEmpty() || !addedItems.isEmpty()) {
+                    refreshItems(removedItems, addedItems);
+                }
+                if (!updatedElements.isEmpty()) {
+                    treeViewer.update(updatedElements.toArray(), null);
+                }
+            }
+        } finally {
+            refreshAll = false;
+            removedItems.clear();
+            addedItems.clear();
+            updatedElements.clear();
+        }
+    }
+
+    /**
+     * Shows or hides in the viewer the tree items whose visibility changed,
+     * once pending tree changes are applied to it.
+     * @param changedItems topmost tree items whose visibility changed
+     */
+    public void refreshVisibility(Collection<KeyTreeItem> changedItems) {
+        applyPendingChanges();
+        List<KeyTreeItem> hidden = new ArrayList<KeyTreeItem>();
+        List<KeyTreeItem> shown = new ArrayList<KeyTreeItem>();
+        for (KeyTreeItem item : changedItems) {
+            if (item.isVisible()) {
+                shown.add(item);
+            } else {
+                hidden.add(item);
+            }
+        }
+        refreshItems(hidden, shown);
+    }
+
+    /**
+     * Refreshes the whole viewer.
+     */
+    protected void refreshAll() {
+        treeViewer.refresh(true);
+    }
+
+    /**
+     * Removes and adds tree items to the viewer.  Items are removed first.
+     * @param removed items removed from the tree
+     * @param added items added to the tree
+     */
+    protected void refreshItems(
+            Collection<KeyTreeItem> removed, Collection<KeyTreeItem> added) {
+        if (!removed.isEmpty()) {
+            treeViewer.remove(removed.toArray());
+        }
+        Map<Object, List<KeyTreeItem>> addedByParent = 
+                new LinkedHashMap<Object, List<KeyTreeItem>>();
+        for (KeyTreeItem item : added) {
+            List<KeyTreeItem> children = addedByParent.get(item.getParent());
+            if (children == null) {
+                children = new ArrayList<KeyTreeItem>();
+                addedByParent.put(item.getParent(), children);
+            }
+            children.add(item);
+        }
+        for (Map.Entry<Object, List<KeyTreeItem>> entry 
+                : addedByParent.entrySet()) {
+            treeViewer.add(entry.getKey(), entry.getValue().toArray());
+        }
     }
 }
@@ -32,8 +32,6 @@ import org.eclipse.swt.graphics.Image;
 
 import com.essiembre.eclipse.rbe.RBEPlugin;
 import com.essiembre.eclipse.rbe.model.tree.KeyTreeItem;
-import com.essiembre.eclipse.rbe.model.tree.visitors.IsCommentedVisitor;
-import com.essiembre.eclipse.rbe.model.tree.visitors.IsMissingValueVisitor;
 import com.essiembre.eclipse.rbe.model.workbench.RBEPreferences;
 import com.essiembre.eclipse.rbe.ui.OverlayImageIcon;
 import com.essiembre.eclipse.rbe.ui.UIUtils;
@@ -73,9 +71,7 @@ public class KeyTreeLabelProvider
 
         // Figure out background icon
         if (treeItem.getKeyTree().getBundleGroup().isKey(treeItem.getId())) {
-            IsCommentedVisitor commentedVisitor = new IsCommentedVisitor();
-            treeItem.accept(commentedVisitor, null);
-            if (commentedVisitor.hasOneCommented()) {
+            if (treeItem.hasOneCommented()) {
                 iconFlags += KEY_COMMENTED;
             } else {
                 iconFlags += KEY_DEFAULT;
@@ -86,11 +82,9 @@ public class KeyTreeLabelProvider
         
         // Maybe add warning icon        
         if (RBEPreferences.getReportMissingValues()) {
-            IsMissingValueVisitor misValVisitor = new IsMissingValueVisitor();
-            treeItem.accept(misValVisitor, null);
-            if (misValVisitor.isMissingValue()) {
+            if (treeItem.isMissingValue()) {
                 iconFlags += WARNING;
-            } else if (misValVisitor.isMissingChildValueOnly()) {
+            } else if (treeItem.isMissingChildValueOnly()) {
                 iconFlags += WARNING_GREY;
             }
         }
@@ -136,9 +130,7 @@ public class KeyTreeLabelProvider
     @Override
     public Color getForeground(Object element) {
         KeyTreeItem treeItem = (KeyTreeItem) element; 
-        IsCommentedVisitor commentedVisitor = new IsCommentedVisitor();
-        treeItem.accept(commentedVisitor, null);
-        if (commentedVisitor.hasOneCommented()) {
+        if (treeItem.hasOneCommented()) {
             return commentedColor;
         }
         return null;
@@ -0,0 +1,296 @@
+/*
+ * Copyright (C) 2003, 2004  Pascal Essiembre, Essiembre Consultant Inc.
+ * 
+ * This file is part of Essiembre ResourceBundle Editor.
+ * 
+ * Essiembre ResourceBundle Editor is free software; you can redistribute it 
+ * and/or modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * Essiembre ResourceBundle Editor is distributed in the hope that it will be 
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Essiembre ResourceBundle Editor; if not, write to the 
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330, 
+ * Boston, MA  02111-1307  USA
+ */
+package com.essiembre.eclipse.rbe.ui.editor.i18n.tree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.jface.viewers.ILazyTreeContentProvider;
+import org.eclipse.jface.viewers.TreePath;
+import org.eclipse.jface.viewers.TreeSelection;
+import org.eclipse.jface.viewers.Viewer;
+import org.eclipse.jface.viewers.ViewerFilter;
+
+import com.essiembre.eclipse.rbe.model.tree.FlatKeyList;
+import com.essiembre.eclipse.rbe.model.tree.KeyTree;
+import com.essiembre.eclipse.rbe.model.tree.KeyTreeItem;
+
+/**
+ * Lazy content provider for a key tree viewer created with 
+ * <code>SWT.VIRTUAL</code>.  Only the rows being shown are materialized.
+ * Lazy viewers do not apply viewer filters, so filters are registered
+ * with this provider instead.  The rows of a flat tree are tracked by key
+ * index, and their items only created when shown.
+ * @author Pascal Essiembre (essiembre@users.sourceforge.net)
+ * @version $Author$ $Revision$ $Date$
+ */
+public class LazyKeyTreeContentProvider extends KeyTreeContentProvider
+        implements ILazyTreeContentProvider {
+
+    /** Filters applied to children. */
+    private final List<ViewerFilter> filters = new ArrayList<ViewerFilter>();
+    /** Filtered children of parents shown so far (key=parent). */
+    private final Map<Object, Object[]> visibleChildren = 
+            new HashMap<Object, Object[]>();
+    /** Indexes of the keys of a flat tree passing all filters, 
+     *  <code>null</code> until the tree is shown. */
+    private int[] visibleFlatIndexes;
+
+    /**
+     * Adds a filter to apply to children.
+     * @param filter the filter to add
+     */
+    public void addFilter(ViewerFilter filter) {
+        filters.add(filter);
+        clearVisibleChildren();
+    }
+
+    /**
+     * @see KeyTreeContentProvider#inputChanged(Viewer, Object, Object)
+     */
+    @Override
+    public void inputChanged(Viewer viewer, Object oldInput, Object newInput) {
+        super.inputChanged(viewer, oldInput, newInput);
+        clearVisibleChildren();
+    }
+
+    /**
+     * @see ILazyTreeContentProvider#updateElement(Object, int)
+     */
+    @Override
+    public void updateElement(Object parent, int index) {
+        FlatKeyList flatKeys = getFlatKeys(parent);
+        if (flatKeys != null) {
+            int[] indexes = getVisibleFlatIndexes(parent, flatKeys);
+            if (index < indexes.length) {
+                KeyTreeItem child = flatKeys.getItem(indexes[index]);
+                treeViewer.replace(parent, index, child);
+                treeViewer.setHasChildren(child, false);
+            }
+            return;
+        }
+        Object[] children = getVisibleChildren(parent);
+        if (index < children.length) {
+            Object child = children[index];
+            treeViewer.replace(parent, index, child);
+            treeViewer.setHasChildren(child, hasVisibleChildren(child));
+        }
+    }
+
+    /**
+     * @see ILazyTreeContentProvider#updateChildCount(Object, int)
+     */
+    @Override
+    public void updateChildCount(Object element, int currentChildCount) {
+        // Counting from the input means the whole tree is refreshed
+        if (element == treeViewer.getInput()) {
+            clearVisibleChildren();
+        }
+        FlatKeyList flatKeys = getFlatKeys(element);
+        int count = flatKeys != null
+                ? getVisibleFlatIndexes(element, flatKeys).length
+                : getVisibleChildren(element).length;
+        if (count != currentChildCount) {
+            treeViewer.setChildCount(element, count);
+        }
+    }
+
+    /**
+     * @see KeyTreeContentProvider#refreshAll()
+     */
+    @Override
+    protected void refreshAll() {
+        clearVisibleChildren();
+        super.refreshAll();
+    }
+
+    /**
+     * Forgets all filtered children, since the children of the items shown
+     * again may have been filtered differently when last shown.
+     * @see KeyTreeContentProvider#refreshVisibility(Collection)
+     */
+    @Override
+    public void refreshVisibility(Collection<KeyTreeItem> changedItems) {
+        applyPendingChanges();
+        clearVisibleChildren();
+        super.refreshVisibility(changedItems);
+    }
+
+    /**
+     * Refreshes the parents of the items added or removed.  Only the rows
+     * being shown under those parents are materialized again.
+     * @see KeyTreeContentProvider#refreshItems(Collection, Collection)
+     */
+    @Override
+    protected void refreshItems(
+            Collection<KeyTreeItem> removed, Collection<KeyTreeItem> added) {
+        Set<Object> parents = new LinkedHashSet<Object>();
+        for (KeyTreeItem item : removed) {
+            visibleChildren.remove(item);
+            parents.add(item.getParent());
+        }
+        for (KeyTreeItem item : added) {
+            parents.add(item.getParent());
+        }
+        for (Object parent : parents) {
+            visibleChildren.remove(parent);
+            if (parent instanceof KeyTree) {
+                visibleFlatIndexes = null;
+            }
+            treeViewer.refresh(parent, false);
+        }
+    }
+
+    /**
+     * Selects a tree item by its path, so that the rows leading to it get
+     * materialized.
+     * @see KeyTreeContentProvider#setSelection(KeyTreeItem, boolean)
+     */
+    @Override
+    protected void setSelection(KeyTreeItem treeItem, boolean reveal) {
+        LinkedList<Object> segments = new LinkedList<Object>();
+        for (Object item = treeItem; item instanceof KeyTreeItem; 
+                item = ((KeyTreeItem) item).getParent()) {
+            segments.addFirst(item);
+        }
+        treeViewer.setSelection(new TreeSelection(
+                new TreePath(segments.toArray())), reveal);
+    }
+
+    /**
+     * Forgets the filtered children of all parents.
+     */
+    private void clearVisibleChildren() {
+        visibleChildren.clear();
+        visibleFlatIndexes = null;
+    }
+
+    /**
+     * Gets the keys of an element if it is a flat tree.
+     * @param element the element
+     * @return the flat keys, or <code>null</code>
+     */
+    private FlatKeyList getFlatKeys(Object element) {
+        if (element instanceof KeyTree) {
+            return ((KeyTree) element).getFlatKeys();
+        }
+        return null;
+    }
+
+    /**
+     * Gets the indexes of the keys of a flat tree passing all filters.  
+     * Filters are given short-lived items, not kept by the tree.
+     * @param tree the flat tree
+     * @param flatKeys the keys of the tree
+     * @return key indexes, in key order
+     */
+    private int[] getVisibleFlatIndexes(Object tree, FlatKeyList flatKeys) {
+        if (visibleFlatIndexes == null) {
+            int[] indexes = new int[flatKeys.size()];
+            int count = 0;
+            for (int i = 0; i < flatKeys.size(); i++) {
+                if (flatKeys.isVisible(i) && (filters.isEmpty() 
+                        || isVisible(tree, flatKeys.newItem(i)))) {
+                    indexes[count++] = i;
+                }
+            }
+            visibleFlatIndexes = Arrays.copyOf(indexes, count);
+        }
+        return visibleFlatIndexes;
+    }
+
+    /**
+     * Gets the children of an element passing all filters.
+     * @param parent the parent element
+     * @return filtered children
+     */
+    private Object[] getVisibleChildren(Object parent) {
+        Object[] children = visibleChildren.get(parent);
+        if (children == null) {
+            Collection<KeyTreeItem> items = getChildItems(parent);
+            List<KeyTreeItem> visibleItems = 
+                    new ArrayList<KeyTreeItem>(items.size());
+            for (KeyTreeItem item : items) {
+                if (isVisible(parent, item)) {
+                    visibleItems.add(item);
+                }
+            }
+            children = visibleItems.toArray();
+            visibleChildren.put(parent, children);
+        }
+        return children;
+    }
+
+    /**
+     * Gets whether an element has at least one child passing all filters.
+     * @param parent the parent element
+     * @return <code>true</code> if a child is visible
+     */
+    private boolean hasVisibleChildren(Object parent) {
+        Object[] children = visibleChildren.get(parent);
+        if (children != null) {
+            return children.length > 0;
+        }
+        for (KeyTreeItem item : getChildItems(parent)) {
+            if (isVisible(parent, item)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets whether an item passes all filters.
+     * @param parent the item parent
+     * @param item the item
+     * @return <code>true</code> if visible
+     */
+    private boolean isVisible(Object parent, KeyTreeItem item) {
+        for (ViewerFilter filter : filters) {
+            if (!filter.select(treeViewer, parent, item)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gets the unfiltered children of an element.
+     * @param parent the parent element
+     * @return child items
+     */
+    private Collection<KeyTreeItem> getChildItems(Object parent) {
+        if (parent instanceof KeyTree) {
+            return ((KeyTree) parent).getRootKeyItems();
+        } else if (parent instanceof KeyTreeItem) {
+            return ((KeyTreeItem) parent).getChildren();
+        }
+        return Collections.emptyList();
+    }
+}
@@ -309,12 +309,17 @@ public class TreeViewerContributor {
             Collection<KeyTreeItem> items = new ArrayList<KeyTreeItem>();
             items.add(selectedItem);
             items.addAll(selectedItem.getNestedChildren());
-            for (KeyTreeItem item : items) {
-                String oldItemKey = item.getId();
-                if (oldItemKey.startsWith(key)) {
-                    String newItemKey = newKey + oldItemKey.substring(key.length());
-                    bundleGroup.renameKey(oldItemKey, newItemKey);
+            bundleGroup.beginBatch();
+            try {
+                for (KeyTreeItem item : items) {
+                    String oldItemKey = item.getId();
+                    if (oldItemKey.startsWith(key)) {
+                        String newItemKey = newKey + oldItemKey.substring(key.length());
+                        bundleGroup.renameKey(oldItemKey, newItemKey);
+                    }
                 }
+            } finally {
+                bundleGroup.endBatch();
             }
         }
     }
@@ -329,8 +334,13 @@ public class TreeViewerContributor {
         Collection<KeyTreeItem> items = new ArrayList<KeyTreeItem>();
         items.add(selectedItem);
         items.addAll(selectedItem.getNestedChildren());
-        for (KeyTreeItem item : items) {
-            bundleGroup.uncommentKey(item.getId());
+        bundleGroup.beginBatch();
+        try {
+            for (KeyTreeItem item : items) {
+                bundleGroup.uncommentKey(item.getId());
+            }
+        } finally {
+            bundleGroup.endBatch();
         }
     }
 
@@ -363,8 +373,13 @@ public class TreeViewerContributor {
             Collection<KeyTreeItem> items = new ArrayList<KeyTreeItem>();
             items.add(selectedItem);
             items.addAll(selectedItem.getNestedChildren());
-            for (KeyTreeItem item : items) {
-                bundleGroup.removeKey(item.getId());
+            bundleGroup.beginBatch();
+            try {
+                for (KeyTreeItem item : items) {
+                    bundleGroup.removeKey(item.getId());
+                }
+            } finally {
+                bundleGroup.endBatch();
             }
         }
     }
@@ -379,8 +394,13 @@ public class TreeViewerContributor {
         Collection<KeyTreeItem> items = new ArrayList<KeyTreeItem>();
         items.add(selectedItem);
         items.addAll(selectedItem.getNestedChildren());
-        for (KeyTreeItem item : items) {
-            bundleGroup.commentKey(item.getId());
+        bundleGroup.beginBatch();
+        try {
+            for (KeyTreeItem item : items) {
+                bundleGroup.commentKey(item.getId());
+            }
+        } finally {
+            bundleGroup.endBatch();
         }
         
     }
@@ -415,13 +435,18 @@ public class TreeViewerContributor {
             Collection<KeyTreeItem> items = new ArrayList<KeyTreeItem>();
             items.add(selectedItem);
             items.addAll(selectedItem.getNestedChildren());
-            for (KeyTreeItem item : items) {
-                String origItemKey = item.getId();
-                if (origItemKey.startsWith(key)) {
-                    String newItemKey = 
-                            newKey + origItemKey.substring(key.length());
-                    bundleGroup.copyKey(origItemKey, newItemKey);
+            bundleGroup.beginBatch();
+            try {
+                for (KeyTreeItem item : items) {
+                    String origItemKey = item.getId();
+                    if (origItemKey.startsWith(key)) {
+                        String newItemKey = 
+                                newKey + origItemKey.substring(key.length());
+                        bundleGroup.copyKey(origItemKey, newItemKey);
+                    }
                 }
+            } finally {
+                bundleGroup.endBatch();
             }
         }
     }
@@ -23,21 +23,31 @@ package com.essiembre.eclipse.rbe.ui.editor.resources;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Platform;
 import org.eclipse.ui.IEditorSite;
 import org.eclipse.ui.PartInitException;
 
+import com.essiembre.eclipse.rbe.RBEPlugin;
 import com.essiembre.eclipse.rbe.model.DeltaEvent;
 import com.essiembre.eclipse.rbe.model.IDeltaListener;
 import com.essiembre.eclipse.rbe.model.bundle.Bundle;
+import com.essiembre.eclipse.rbe.model.bundle.BundleEntry;
 import com.essiembre.eclipse.rbe.model.bundle.BundleGroup;
-import com.essiembre.eclipse.rbe.model.bundle.PropertiesGenerator;
 import com.essiembre.eclipse.rbe.model.bundle.PropertiesParser;
 import com.essiembre.eclipse.rbe.model.tree.KeyTree;
 import com.essiembre.eclipse.rbe.model.tree.updater.FlatKeyTreeUpdater;
@@ -53,11 +63,20 @@ import com.essiembre.eclipse.rbe.model.workbench.RBEPreferences;
  */
 public class ResourceManager {
 
+    /** Whether to trace how long parsing each properties file takes. */
+    private static final boolean DEBUG_LOADING =
+            RBEPlugin.getDefault().isDebugging()
+            && "true".equalsIgnoreCase(Platform.getDebugOption( //$NON-NLS-1$
+                    RBEPlugin.ID + "/debug/loading")); //$NON-NLS-1$
+
     private IResourceFactory resourcesFactory;
     private final BundleGroup bundleGroup;
     private final KeyTree keyTree;
     /*default*/ final Map<Locale, SourceEditor> sourceEditors = new HashMap<Locale, SourceEditor>();
     private final List<Locale> locales = new ArrayList<Locale>();
+    /** Entry changes of each bundle not yet shown in its source editor. */
+    private final Map<Bundle, EntryChangeListener> entryChanges =
+            new HashMap<Bundle, EntryChangeListener>();
     
     /**
      * Constructor.
@@ -75,12 +94,16 @@ public class ResourceManager {
             Locale locale = sourceEditor.getLocale();
             sourceEditors.put(locale, sourceEditor);
             locales.add(locale);
-            bundleGroup.addBundle(
-                    locale, PropertiesParser.parse(sourceEditor.getContent()));			
+        }
+        bundleGroup.addBundles(parseBundles(editors));
+        for (Iterator<Bundle> iter = bundleGroup.iterator(); iter.hasNext();) {
+            trackEntryChanges(iter.next());
         }
         bundleGroup.addListener(new IDeltaListener() {
             @Override
-            public void add(DeltaEvent event) {}    // do nothing
+            public void add(DeltaEvent event) {
+                trackEntryChanges((Bundle) event.receiver());
+            }
             @Override
             public void remove(DeltaEvent event) {} // do nothing
             @Override
@@ -88,8 +111,9 @@ public class ResourceManager {
                 final Bundle bundle = (Bundle) event.receiver();
                 final SourceEditor editor = 
                         sourceEditors.get(bundle.getLocale());
-                String editorContent = PropertiesGenerator.generate(bundle);
-                editor.setContent(editorContent);
+                EntryChangeListener changes = entryChanges.get(bundle);
+                editor.updateContent(bundle, 
+                        changes != null ? changes.takeReplacedEntry() : null);
             }
             @Override
             public void select(DeltaEvent event) {
@@ -204,15 +228,160 @@ public class ResourceManager {
      * Reloads the properties files (parse them).
      */
     public void reloadProperties() {
-        SourceEditor[] editors = resourcesFactory.getSourceEditors();
-        for (SourceEditor editor : editors) {
+        List<SourceEditor> dirtyEditors = new ArrayList<SourceEditor>();
+        for (SourceEditor editor : resourcesFactory.getSourceEditors()) {
             if (editor.isCacheDirty()) {
-                bundleGroup.addBundle(
-                        editor.getLocale(),
-                        PropertiesParser.parse(editor.getContent()));
-                editor.resetCache();
+                dirtyEditors.add(editor);
+            }
+        }
+        if (dirtyEditors.isEmpty()) {
+            return;
+        }
+        bundleGroup.addBundles(parseBundles(
+                dirtyEditors.toArray(new SourceEditor[dirtyEditors.size()])));
+        for (SourceEditor editor : dirtyEditors) {
+            editor.resetCache();
+        }
+    }
+
+    /**
+     * Starts tracking the entry changes of a bundle, so that source editors
+     * can regenerate only the entry that changed.
+     * @param bundle the bundle to track
+     */
+    /*default*/ void trackEntryChanges(Bundle bundle) {
+        if (!entryChanges.containsKey(bundle)) {
+            EntryChangeListener listener = new EntryChangeListener();
+            bundle.addListener(listener);
+            entryChanges.put(bundle, listener);
+        }
+    }
+
+    /**
+     * Parses the content of the given source editors, in parallel when
+     * there are several of them.  Editor content is obtained from the
+     * calling thread.
+     * @param editors source editors to parse
+     * @return parsed bundles (key=Locale; value=Bundle), in editor order
+     */
+    private static Map<Locale, Bundle> parseBundles(SourceEditor[] editors) {
+        long start = System.nanoTime();
+        ParseTask[] tasks = new ParseTask[editors.length];
+        for (int i = 0; i < editors.length; i++) {
+            tasks[i] = new ParseTask(editors[i].getContent());
+        }
+        Bundle[] bundles = new Bundle[editors.length];
+        int threads = Math.min(
+                editors.length, Runtime.getRuntime().availableProcessors());
+        if (threads <= 1) {
+            for (int i = 0; i < tasks.length; i++) {
+                bundles[i] = tasks[i].call();
+            }
+        } else {
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            try {
+                List<Future<Bundle>> futures = new ArrayList<Future<Bundle>>();
+                for (ParseTask task : tasks) {
+                    futures.add(executor.submit(task));
+                }
+                for (int i = 0; i < tasks.length; i++) {
+                    bundles[i] = futures.get(i).get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new OperationCanceledException();
+            } catch (ExecutionException e) {
+                // parsing does not throw checked exceptions
+                if (e.getCause() instanceof Error) {
+                    throw (Error) e.getCause();
+                }
+                throw (RuntimeException) e.getCause();
+            } finally {
+                executor.shutdownNow();
             }
         }
+
+        Map<Locale, Bundle> parsedBundles = new LinkedHashMap<Locale, Bundle>();
+        for (int i = 0; i < editors.length; i++) {
+            parsedBundles.put(editors[i].getLocale(), bundles[i]);
+            if (DEBUG_LOADING) {
+                System.out.println("RBE parsed " //$NON-NLS-1$
+                        + editors[i].getFile().getFullPath() + " (" //$NON-NLS-1$
+                        + bundles[i].getSize() + " entries) in " //$NON-NLS-1$
+                        + tasks[i].time / 1000000 + " ms"); //$NON-NLS-1$
+            }
+        }
+        if (DEBUG_LOADING) {
+            System.out.println("RBE parsed " + editors.length //$NON-NLS-1$
+                    + " file(s) on " + threads + " thread(s) in " //$NON-NLS-1$ //$NON-NLS-2$
+                    + (System.nanoTime() - start) / 1000000 + " ms"); //$NON-NLS-1$
+        }
+        return parsedBundles;
+    }
+
+    /**
+     * Records the changes made to the entries of a bundle until they are
+     * shown in its source editor, telling whether all of them replaced
+     * the same entry.
+     */
+    private static final class EntryChangeListener implements IDeltaListener {
+        /** First entry replaced since last taken, if any. */
+        private BundleEntry replacedEntry;
+        /** Whether other changes than replacing that entry were made. */
+        private boolean otherChanges;
+        /**
+         * Gets the entry replaced since last called, and forgets changes.
+         * @return the replaced entry, or <code>null</code> if entries were
+         *         added or removed, several entries were replaced, or
+         *         nothing changed
+         */
+        /*default*/ BundleEntry takeReplacedEntry() {
+            BundleEntry entry = otherChanges ? null : replacedEntry;
+            replacedEntry = null;
+            otherChanges = false;
+            return entry;
+        }
+        @Override
+        public void add(DeltaEvent event) {
+            otherChanges = true;
+        }
+        @Override
+        public void remove(DeltaEvent event) {
+            otherChanges = true;
+        }
+        @Override
+        public void modify(DeltaEvent event) {
+            BundleEntry oldEntry = (BundleEntry) event.receiver();
+            if (replacedEntry == null) {
+                replacedEntry = oldEntry;
+            } else if (!replacedEntry.getKey().equals(oldEntry.getKey())) {
+                otherChanges = true;
+            }
+        }
+        @Override
+        public void select(DeltaEvent event) {
+            // do nothing
+        }
+    }
+
+    /**
+     * Parses properties file content, recording how long it took.
+     */
+    private static final class ParseTask implements Callable<Bundle> {
+        private final String content;
+        /** Parsing time, in nanoseconds. */
+        /*default*/ long time;
+        /*default*/ ParseTask(String content) {
+            super();
+            this.content = content;
+        }
+        @Override
+        public Bundle call() {
+            long start = System.nanoTime();
+            Bundle bundle = PropertiesParser.parse(content);
+            time = System.nanoTime() - start;
+            return bundle;
+        }
     }
 
 }
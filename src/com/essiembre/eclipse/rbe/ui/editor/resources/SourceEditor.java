@@ -25,10 +25,18 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.eclipse.core.resources.IFile;
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IDocumentExtension4;
 import org.eclipse.jface.text.TextSelection;
 import org.eclipse.ui.editors.text.TextEditor;
 import org.eclipse.ui.texteditor.ITextEditor;
 
+import com.essiembre.eclipse.rbe.model.bundle.Bundle;
+import com.essiembre.eclipse.rbe.model.bundle.BundleEntry;
+import com.essiembre.eclipse.rbe.model.bundle.PropertiesGenerator;
+import com.essiembre.eclipse.rbe.model.bundle.PropertiesLayout;
+
 /**
  * Wrapper around a properties file text editor providing extra founctionality.
  * @author Pascal Essiembre (essiembre@users.sourceforge.net)
@@ -39,7 +47,17 @@ public class SourceEditor {
     private final Locale locale;
     private final IFile file;
     private final ITextEditor editor;
+    /**
+     * Content last set, generated or parsed, or <code>null</code> when it is
+     * the document content at {@link #cacheStamp}.
+     */
     private String contentCache;
+    /** Document modification stamp when the cache was last updated. */
+    private long cacheStamp = IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP;
+    /** Where entries lie in the content last generated, if any. */
+    private PropertiesLayout layout;
+    /** Document modification stamp after the content was last generated. */
+    private long layoutStamp = IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP;
     
     /**
      * Constructor.
@@ -83,6 +101,9 @@ public class SourceEditor {
      * @return <code>true</code> if dirty
      */
     public boolean isCacheDirty() {
+        if (contentCache == null) {
+            return getModificationStamp(getDocument()) != cacheStamp;
+        }
         return !getContent().equals(contentCache);
     }
     
@@ -98,8 +119,7 @@ public class SourceEditor {
      * @return content
      */
     public String getContent() {
-        return editor.getDocumentProvider().getDocument(
-                editor.getEditorInput()).get();
+        return getDocument().get();
     }
     
     /**
@@ -107,11 +127,138 @@ public class SourceEditor {
      * @param content new content
      */
     public void setContent(String content) {
-        editor.getDocumentProvider().getDocument(
-                editor.getEditorInput()).set(content);
+        getDocument().set(content);
+        contentCache = content;
+        layout = null;
+    }
+
+    /**
+     * Updates the content of this source editor, replacing only the region
+     * that differs from the existing content (what lies between their
+     * common beginning and common end).  Unlike 
+     * {@link #setContent(String)}, undo history and incremental 
+     * reconciling only see the lines that actually changed.
+     * @param content new content
+     */
+    public void updateContent(String content) {
+        layout = null;
+        IDocument document = getDocument();
+        String oldContent = document.get();
+        int oldEnd = oldContent.length();
+        int newEnd = content.length();
+        int start = 0;
+        int max = Math.min(oldEnd, newEnd);
+        while (start < max && oldContent.charAt(start) == content.charAt(start)) {
+            start++;
+        }
+        while (oldEnd > start && newEnd > start 
+                && oldContent.charAt(oldEnd - 1) == content.charAt(newEnd - 1)) {
+            oldEnd--;
+            newEnd--;
+        }
+        if (oldEnd > start || newEnd > start) {
+            try {
+                document.replace(
+                        start, oldEnd - start, content.substring(start, newEnd));
+            } catch (BadLocationException e) {
+                // should not happen, offsets are within document
+                document.set(content);
+            }
+        }
         contentCache = content;
     }
+
+    /**
+     * Updates the content of this source editor after a bundle changed.
+     * When the only change is the replacement of the given entry, and 
+     * neither the document nor the formatting preferences changed since 
+     * the content was last generated, only the lines of that entry are
+     * regenerated and replaced.  Otherwise, the whole bundle is generated
+     * and applied with {@link #updateContent(String)}.
+     * @param bundle the bundle shown by this source editor
+     * @param oldEntry entry replaced since the content was last generated,
+     *        or <code>null</code> if the bundle changed otherwise
+     */
+    public void updateContent(Bundle bundle, BundleEntry oldEntry) {
+        IDocument document = getDocument();
+        if (oldEntry != null && layout != null 
+                && getModificationStamp(document) == layoutStamp
+                && layoutStamp != IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP
+                && replaceEntry(document, bundle, oldEntry)) {
+            return;
+        }
+        PropertiesLayout newLayout = new PropertiesLayout();
+        updateContent(PropertiesGenerator.generate(bundle, newLayout));
+        layout = newLayout;
+        layoutStamp = getModificationStamp(document);
+    }
+
+    /**
+     * Replaces the lines of a replaced entry with those of its replacement,
+     * provided the document holds the replaced entry where it was generated
+     * and both entries are generated with the same equal sign positions
+     * and key group line breaks.
+     * @param document the document
+     * @param bundle the bundle shown by this source editor
+     * @param oldEntry the replaced entry
+     * @return <code>true</code> if the entry was replaced
+     */
+    private boolean replaceEntry(
+            IDocument document, Bundle bundle, BundleEntry oldEntry) {
+        int index = layout.indexOf(oldEntry.getKey());
+        BundleEntry newEntry = bundle.getEntry(oldEntry.getKey());
+        if (index < 0 || newEntry == null || !layout.isFormatCurrent()) {
+            return false;
+        }
+        String oldText = PropertiesGenerator.generateEntry(oldEntry, layout);
+        String newText = PropertiesGenerator.generateEntry(newEntry, layout);
+        if (oldText == null || newText == null) {
+            return false;
+        }
+        int offset = layout.getOffset(index);
+        int length = layout.getLength(index);
+        try {
+            if (length != oldText.length() 
+                    || !document.get(offset, length).equals(oldText)) {
+                return false;
+            }
+            if (newText.equals(oldText)) {
+                return true;
+            }
+            document.replace(offset, length, newText);
+        } catch (BadLocationException e) {
+            return false;
+        }
+        layout.setLength(index, newText.length());
+        layoutStamp = getModificationStamp(document);
+        // only generated content changed the document, it stands for the cache
+        contentCache = null;
+        cacheStamp = layoutStamp;
+        return true;
+    }
+
+    /**
+     * Gets the modification stamp of a document.
+     * @param document the document
+     * @return modification stamp, or 
+     *         {@link IDocumentExtension4#UNKNOWN_MODIFICATION_STAMP}
+     */
+    private static long getModificationStamp(IDocument document) {
+        if (document instanceof IDocumentExtension4) {
+            return ((IDocumentExtension4) document).getModificationStamp();
+        }
+        return IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP;
+    }
     
+    /**
+     * Gets the document edited by this source editor.
+     * @return document
+     */
+    private IDocument getDocument() {
+        return editor.getDocumentProvider().getDocument(
+                editor.getEditorInput());
+    }
+
     /**
      * Checks whether this source editor is read-only.
      * @return <code>true</code> if read-only.
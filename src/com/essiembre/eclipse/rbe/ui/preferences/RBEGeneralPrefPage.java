@@ -55,6 +55,7 @@ public class RBEGeneralPrefPage extends AbstractRBEPrefPage {
 
     private Button keyTreeHierarchical;
     private Button keyTreeExpanded;
+    private Button keyTreeVirtual;
 
     private Button fieldTabInserts;
 
@@ -90,6 +91,7 @@ public class RBEGeneralPrefPage extends AbstractRBEPrefPage {
         prefs.setValue(RBEPreferences.SUPPORT_NL, supportNL.getSelection());
         prefs.setValue(RBEPreferences.KEY_TREE_HIERARCHICAL, keyTreeHierarchical.getSelection());
         prefs.setValue(RBEPreferences.KEY_TREE_EXPANDED, keyTreeExpanded.getSelection());
+        prefs.setValue(RBEPreferences.KEY_TREE_VIRTUAL, keyTreeVirtual.getSelection());
         prefs.setValue(RBEPreferences.FIELD_TAB_INSERTS, fieldTabInserts.getSelection());
         prefs.setValue(RBEPreferences.NO_TREE_IN_EDITOR, noTreeInEditor.getSelection());
         prefs.setValue(RBEPreferences.MIN_HEIGHT, _minHeight.getText());
@@ -153,6 +155,12 @@ public class RBEGeneralPrefPage extends AbstractRBEPrefPage {
         keyTreeExpanded.setSelection(prefs.getBoolean(RBEPreferences.KEY_TREE_EXPANDED)); //$NON-NLS-1$
         new Label(field, SWT.NONE).setText(RBEPlugin.getString("prefs.keyTree.expanded")); //$NON-NLS-1$
 
+        // Key tree only creating visible items (large bundles)
+        field = createFieldComposite(composite);
+        keyTreeVirtual = new Button(field, SWT.CHECK);
+        keyTreeVirtual.setSelection(prefs.getBoolean(RBEPreferences.KEY_TREE_VIRTUAL));
+        new Label(field, SWT.NONE).setText(RBEPlugin.getString("prefs.keyTree.virtual")); //$NON-NLS-1$
+
         // Default tab key behaviour in text field
         field = createFieldComposite(composite);
         fieldTabInserts = new Button(field, SWT.CHECK);
@@ -204,6 +212,7 @@ public class RBEGeneralPrefPage extends AbstractRBEPrefPage {
         supportNL.setSelection(prefs.getDefaultBoolean(RBEPreferences.SUPPORT_NL));
         keyTreeHierarchical.setSelection(prefs.getDefaultBoolean(RBEPreferences.KEY_TREE_HIERARCHICAL));
         keyTreeHierarchical.setSelection(prefs.getDefaultBoolean(RBEPreferences.KEY_TREE_EXPANDED));
+        keyTreeVirtual.setSelection(prefs.getDefaultBoolean(RBEPreferences.KEY_TREE_VIRTUAL));
         fieldTabInserts.setSelection(prefs.getDefaultBoolean(RBEPreferences.FIELD_TAB_INSERTS));
         autoAdjust.setSelection(prefs.getDefaultBoolean(RBEPreferences.AUTO_ADJUST));
         _minHeight.setText(prefs.getDefaultString(RBEPreferences.MIN_HEIGHT));
@@ -54,6 +54,7 @@ public class RBEPreferenceInitializer extends AbstractPreferenceInitializer {
         prefs.setDefault(RBEPreferences.FIELD_TAB_INSERTS, true);
         prefs.setDefault(RBEPreferences.KEY_TREE_HIERARCHICAL, true);
         prefs.setDefault(RBEPreferences.KEY_TREE_EXPANDED, true);
+        prefs.setDefault(RBEPreferences.KEY_TREE_VIRTUAL, false);
         prefs.setDefault(RBEPreferences.SUPPORT_FRAGMENTS, true);
         prefs.setDefault(RBEPreferences.LOAD_ONLY_FRAGMENT_RESOURCES, false);
 
@@ -85,6 +86,7 @@ public class RBEPreferenceInitializer extends AbstractPreferenceInitializer {
         prefs.setDefault(RBEPreferences.REPORT_DUPL_VALUES, true);
         prefs.setDefault(RBEPreferences.REPORT_SIM_VALUES_WORD_COMPARE, true);
         prefs.setDefault(RBEPreferences.REPORT_SIM_VALUES_PRECISION, 0.75d);
+        prefs.setDefault(RBEPreferences.LEGACY_PARSER, false);
 
         prefs.setDefault(RBEPreferences.NO_TREE_IN_EDITOR, false);
 
@@ -47,6 +47,7 @@ public class RBEReportingPrefPage extends AbstractRBEPrefPage {
     private Button reportSimVals;
     private Text reportSimPrecision;
     private Button[] reportSimValsMode = new Button[2];
+    private Button legacyParser;
 
     /**
      * Constructor.
@@ -136,6 +137,17 @@ public class RBEReportingPrefPage extends AbstractRBEPrefPage {
                 RBEPlugin.getString(
                         "prefs.perform.simVals.precision.error"), //$NON-NLS-1$
                 0, 1));
+        field = createFieldComposite(composite, indentPixels);
+        new Label(field, SWT.NONE).setText(RBEPlugin.getString(
+                "prefs.perform.simVals.precision.note")); //$NON-NLS-1$
+        
+        // Use legacy parser?
+        field = createFieldComposite(composite);
+        legacyParser = new Button(field, SWT.CHECK);
+        legacyParser.setSelection(
+                prefs.getBoolean(RBEPreferences.LEGACY_PARSER));
+        new Label(field, SWT.NONE).setText(
+                RBEPlugin.getString("prefs.perform.legacyParser")); //$NON-NLS-1$
         
         refreshEnabledStatuses();
         
@@ -161,6 +173,8 @@ public class RBEReportingPrefPage extends AbstractRBEPrefPage {
                 reportSimValsMode[1].getSelection());
         prefs.setValue(RBEPreferences.REPORT_SIM_VALUES_PRECISION,
                 Double.parseDouble(reportSimPrecision.getText()));
+        prefs.setValue(RBEPreferences.LEGACY_PARSER,
+                legacyParser.getSelection());
         refreshEnabledStatuses();
         return super.performOk();
     }
@@ -184,6 +198,8 @@ public class RBEReportingPrefPage extends AbstractRBEPrefPage {
                 RBEPreferences.REPORT_SIM_VALUES_LEVENSTHEIN));
         reportSimPrecision.setText(Double.toString(prefs.getDefaultDouble(
                 RBEPreferences.REPORT_SIM_VALUES_PRECISION)));
+        legacyParser.setSelection(prefs.getDefaultBoolean(
+                RBEPreferences.LEGACY_PARSER));
         refreshEnabledStatuses();
         super.performDefaults();
     }
@@ -30,6 +30,7 @@ import com.essiembre.eclipse.rbe.model.IDeltaListener;
 import com.essiembre.eclipse.rbe.model.DeltaEvent;
 
 import com.essiembre.eclipse.rbe.ui.editor.i18n.tree.KeyTreeContentProvider;
+import com.essiembre.eclipse.rbe.ui.editor.i18n.tree.KeyTreeItemComparator;
 import com.essiembre.eclipse.rbe.ui.editor.i18n.tree.TreeViewerContributor;
 import com.essiembre.eclipse.rbe.ui.editor.i18n.tree.KeyTreeLabelProvider;
 import com.essiembre.eclipse.rbe.ui.UIUtils;
@@ -94,6 +95,7 @@ public class ResourceBundleOutline extends ContentOutlinePage {
         getTreeViewer().setContentProvider(contentprovider);
         getTreeViewer().setLabelProvider(new KeyTreeLabelProvider());
         getTreeViewer().setUseHashlookup(true);
+        getTreeViewer().setComparator(new KeyTreeItemComparator());
         getTreeViewer().setInput(tree);
         if (RBEPreferences.getKeyTreeExpanded()) {
             ((Tree)getTreeViewer().getControl()).setRedraw(false);
@@ -0,0 +1,377 @@
+/*
+ * Copyright (C) 2003, 2004  Pascal Essiembre, Essiembre Consultant Inc.
+ *
+ * This file is part of Essiembre ResourceBundle Editor.
+ *
+ * Essiembre ResourceBundle Editor is free software; you can redistribute it
+ * and/or modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * Essiembre ResourceBundle Editor is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Essiembre ResourceBundle Editor; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+package com.essiembre.eclipse.rbe.model.bundle;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+
+import org.eclipse.jface.preference.IPreferenceStore;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.essiembre.eclipse.rbe.RBEPlugin;
+import com.essiembre.eclipse.rbe.model.workbench.RBEPreferences;
+
+/**
+ * Golden file tests of <code>PropertiesGenerator</code>.  The bundle in
+ * <code>generator/messages.properties</code> is generated with various
+ * formatting preferences, and compared with the matching file in
+ * <code>generator/expected</code>.  Each test starts from the default
+ * preferences.  Expected files use <code>\n</code> line breaks, so
+ * generated line separators are changed to <code>\n</code> before
+ * comparing.  Entries regenerated on their own must match their place
+ * in the generated file.
+ * <p>
+ * Run as a JUnit plug-in test, for the plugin preference store to exist.
+ * @author Pascal Essiembre (essiembre@users.sourceforge.net)
+ * @version $Author$ $Revision$ $Date$
+ */
+public class PropertiesGeneratorTest {
+
+    /** Encoding of input and expected files. */
+    private static final Charset UTF_8 = Charset.forName("UTF-8"); //$NON-NLS-1$
+
+    /** Preferences changed by these tests. */
+    private static final String[] PREFERENCES = {
+        RBEPreferences.SHOW_GENERATOR,
+        RBEPreferences.KEEP_EMPTY_FIELDS,
+        RBEPreferences.ALIGN_EQUAL_SIGNS,
+        RBEPreferences.SPACES_AROUND_EQUAL_SIGNS,
+        RBEPreferences.GROUP_KEYS,
+        RBEPreferences.KEY_GROUP_SEPARATOR,
+        RBEPreferences.GROUP_LEVEL_DEEP,
+        RBEPreferences.GROUP_LINE_BREAKS,
+        RBEPreferences.GROUP_ALIGN_EQUAL_SIGNS,
+        RBEPreferences.WRAP_LINES,
+        RBEPreferences.WRAP_CHAR_LIMIT,
+        RBEPreferences.WRAP_ALIGN_EQUAL_SIGNS,
+        RBEPreferences.WRAP_INDENT_SPACES,
+        RBEPreferences.CONVERT_UNICODE_TO_ENCODED,
+        RBEPreferences.CONVERT_UNICODE_TO_ENCODED_UPPER,
+        RBEPreferences.CONVERT_ENCODED_TO_UNICODE,
+        RBEPreferences.FORCE_NEW_LINE_TYPE,
+        RBEPreferences.NEW_LINE_TYPE,
+        RBEPreferences.NEW_LINE_NICE,
+        RBEPreferences.LEGACY_PARSER,
+    };
+
+    /** Plugin preference store. */
+    private IPreferenceStore prefs;
+
+    /**
+     * Sets the preferences changed by these tests to their defaults.
+     */
+    @Before
+    public void setUp() {
+        prefs = RBEPlugin.getDefault().getPreferenceStore();
+        resetPreferences();
+    }
+
+    /**
+     * Sets the preferences changed by these tests back to their defaults.
+     */
+    @After
+    public void tearDown() {
+        resetPreferences();
+    }
+
+    @Test
+    public void testDefaults() throws IOException {
+        assertGenerated("defaults"); //$NON-NLS-1$
+    }
+
+    @Test
+    public void testNoGenerator() throws IOException {
+        prefs.setValue(RBEPreferences.SHOW_GENERATOR, false);
+        assertGenerated("no-generator"); //$NON-NLS-1$
+    }
+
+    @Test
+    public void testKeepEmptyFields() throws IOException {
+        prefs.setValue(RBEPreferences.KEEP_EMPTY_FIELDS, true);
+        assertGenerated("keep-empty-fields"); //$NON-NLS-1$
+    }
+
+    @Test
+    public void testNoAlignment() throws IOException {
+        prefs.setValue(RBEPreferences.ALIGN_EQUAL_SIGNS, false);
+        assertGenerated("no-alignment"); //$NON-NLS-1$
+    }
+
+    @Test
+    public void testNoGroupAlignment() throws IOException {
+        prefs.setValue(RBEPreferences.GROUP_ALIGN_EQUAL_SIGNS, false);
+        assertGenerated("no-group-alignment"); //$NON-NLS-1$
+    }
+
+    @Test
+    public void testNoSpacesAroundEquals() throws IOException {
+        prefs.setValue(RBEPreferences.SPACES_AROUND_EQUAL_SIGNS, false);
+        assertGenerated("no-spaces-around-equals"); //$NON-NLS-1$
+    }
+
+    @Test
+    public void testNoGrouping() throws IOException {
+        prefs.setValue(RBEPreferences.GROUP_KEYS, false);
+        assertGenerated("no-grouping"); //$NON-NLS-1$
+    }
+
+    @Test
+    public void testGroupLevelTwo() throws IOException {
+        prefs.setValue(RBEPreferences.GROUP_LEVEL_DEEP, 2);
+        assertGenerated("group-level-two"); //$NON-NLS-1$
+    }
+
+    @Test
+    public void testGroupLineBreaks() throws IOException {
+        prefs.setValue(RBEPreferences.GROUP_LINE_BREAKS, 2);
+        assertGenerated("group-line-breaks"); //$NON-NLS-1$
+    }
+
+    @Test
+    public void testGroupWithoutLineBreaks() throws IOException {
+        prefs.setValue(RBEPreferences.GROUP_LINE_BREAKS, 0);
+        assertGenerated("group-without-line-breaks"); //$NON-NLS-1$
+    }
+
+    @Test
+    public void testGroupSeparator() throws IOException {
+        prefs.setValue(RBEPreferences.KEY_GROUP_SEPARATOR, "_"); //$NON-NLS-1$
+        assertGenerated("group-separator"); //$NON-NLS-1$
+    }
+
+    @Test
+    public void testWrap() throws IOException {
+        prefs.setValue(RBEPreferences.WRAP_LINES, true);
+        assertGenerated("wrap"); //$NON-NLS-1$
+    }
+
+    @Test
+    public void testWrapNarrow() throws IOException {
+        prefs.setValue(RBEPreferences.WRAP_LINES, true);
+        prefs.setValue(RBEPreferences.WRAP_CHAR_LIMIT, 30);
+        prefs.setValue(RBEPreferences.WRAP_INDENT_SPACES, 2);
+        assertGenerated("wrap-narrow"); //$NON-NLS-1$
+    }
+
+    @Test
+    public void testWrapAlignedWithEquals() throws IOException {
+        prefs.setValue(RBEPreferences.WRAP_LINES, true);
+        prefs.setValue(RBEPreferences.WRAP_ALIGN_EQUAL_SIGNS, true);
+        assertGenerated("wrap-aligned-with-equals"); //$NON-NLS-1$
+    }
+
+    @Test
+    public void testWrapWithoutAlignment() throws IOException {
+        prefs.setValue(RBEPreferences.WRAP_LINES, true);
+        prefs.setValue(RBEPreferences.WRAP_ALIGN_EQUAL_SIGNS, true);
+        prefs.setValue(RBEPreferences.ALIGN_EQUAL_SIGNS, false);
+        prefs.setValue(RBEPreferences.SPACES_AROUND_EQUAL_SIGNS, false);
+        assertGenerated("wrap-without-alignment"); //$NON-NLS-1$
+    }
+
+    @Test
+    public void testNoUnicodeEscapes() throws IOException {
+        prefs.setValue(RBEPreferences.CONVERT_UNICODE_TO_ENCODED, false);
+        assertGenerated("no-unicode-escapes"); //$NON-NLS-1$
+    }
+
+    @Test
+    public void testLowerCaseHex() throws IOException {
+        prefs.setValue(RBEPreferences.CONVERT_UNICODE_TO_ENCODED_UPPER, false);
+        assertGenerated("lower-case-hex"); //$NON-NLS-1$
+    }
+
+    @Test
+    public void testForcedUnixNewLines() throws IOException {
+        prefs.setValue(RBEPreferences.FORCE_NEW_LINE_TYPE, true);
+        prefs.setValue(RBEPreferences.NEW_LINE_TYPE,
+                RBEPreferences.NEW_LINE_UNIX);
+        assertGenerated("new-lines-unix"); //$NON-NLS-1$
+    }
+
+    @Test
+    public void testForcedWindowsNewLines() throws IOException {
+        prefs.setValue(RBEPreferences.FORCE_NEW_LINE_TYPE, true);
+        prefs.setValue(RBEPreferences.NEW_LINE_TYPE,
+                RBEPreferences.NEW_LINE_WIN);
+        assertGenerated("new-lines-windows"); //$NON-NLS-1$
+    }
+
+    @Test
+    public void testForcedMacNewLines() throws IOException {
+        prefs.setValue(RBEPreferences.FORCE_NEW_LINE_TYPE, true);
+        prefs.setValue(RBEPreferences.NEW_LINE_TYPE,
+                RBEPreferences.NEW_LINE_MAC);
+        assertGenerated("new-lines-mac"); //$NON-NLS-1$
+    }
+
+    @Test
+    public void testNiceNewLines() throws IOException {
+        prefs.setValue(RBEPreferences.NEW_LINE_NICE, true);
+        assertGenerated("new-lines-nice"); //$NON-NLS-1$
+    }
+
+    @Test
+    public void testNiceNewLinesWrapped() throws IOException {
+        prefs.setValue(RBEPreferences.NEW_LINE_NICE, true);
+        prefs.setValue(RBEPreferences.WRAP_LINES, true);
+        prefs.setValue(RBEPreferences.WRAP_CHAR_LIMIT, 40);
+        assertGenerated("new-lines-nice-wrapped"); //$NON-NLS-1$
+    }
+
+    @Test
+    public void testCompact() throws IOException {
+        prefs.setValue(RBEPreferences.SHOW_GENERATOR, false);
+        prefs.setValue(RBEPreferences.ALIGN_EQUAL_SIGNS, false);
+        prefs.setValue(RBEPreferences.SPACES_AROUND_EQUAL_SIGNS, false);
+        prefs.setValue(RBEPreferences.GROUP_KEYS, false);
+        assertGenerated("compact"); //$NON-NLS-1$
+    }
+
+    @Test
+    public void testReplacedEntry() throws IOException {
+        Bundle bundle = PropertiesParser.parse(
+                read("generator/messages.properties")); //$NON-NLS-1$
+        PropertiesLayout layout = new PropertiesLayout();
+        StringBuilder text = new StringBuilder(
+                PropertiesGenerator.generate(bundle, layout));
+        String[] keys = bundle.getKeys().toArray(new String[0]);
+        for (int i = 0; i < keys.length; i += 2) {
+            BundleEntry oldEntry = bundle.getEntry(keys[i]);
+            if (PropertiesGenerator.generateEntry(oldEntry, layout) == null) {
+                // left out entries cannot be replaced in place
+                continue;
+            }
+            BundleEntry newEntry = new BundleEntry(keys[i], 
+                    "replaced " + oldEntry.getValue() //$NON-NLS-1$
+                    + "\nand longer", oldEntry.getComment(), //$NON-NLS-1$
+                    oldEntry.isCommented());
+            bundle.addEntry(newEntry);
+            String entryText = 
+                    PropertiesGenerator.generateEntry(newEntry, layout);
+            int offset = layout.getOffset(i);
+            text.replace(offset, offset + layout.getLength(i), entryText);
+            layout.setLength(i, entryText.length());
+        }
+        assertEquals(PropertiesGenerator.generate(bundle), text.toString());
+        assertLayout("replaced", bundle, text.toString(), layout); //$NON-NLS-1$
+        assertNull(PropertiesGenerator.generateEntry(new BundleEntry(
+                "missing.key", "value", null), layout)); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+    /**
+     * Generates the input bundle with the current preferences, both as a
+     * string and to a writer, and compares the results with an expected
+     * file.
+     * @param name expected file name, without extension
+     * @throws IOException problem reading files
+     */
+    private void assertGenerated(String name) throws IOException {
+        Bundle bundle = PropertiesParser.parse(
+                read("generator/messages.properties")); //$NON-NLS-1$
+        String expected = read(
+                "generator/expected/" + name + ".properties"); //$NON-NLS-1$ //$NON-NLS-2$
+        assertEquals(name, expected,
+                toUnixLineBreaks(PropertiesGenerator.generate(bundle)));
+        StringWriter writer = new StringWriter();
+        PropertiesGenerator.generate(bundle, writer);
+        assertEquals(name, expected, toUnixLineBreaks(writer.toString()));
+        PropertiesLayout layout = new PropertiesLayout();
+        String text = PropertiesGenerator.generate(bundle, layout);
+        assertEquals(name, expected, toUnixLineBreaks(text));
+        assertLayout(name, bundle, text, layout);
+    }
+
+    /**
+     * Checks that each entry of a bundle, generated on its own, is found
+     * where the layout places it in generated text.
+     * @param name test case name
+     * @param bundle the generated bundle
+     * @param text the generated text
+     * @param layout the layout of the generated text
+     */
+    private static void assertLayout(String name, Bundle bundle,
+            String text, PropertiesLayout layout) {
+        for (String key : bundle.getKeys()) {
+            int index = layout.indexOf(key);
+            int offset = layout.getOffset(index);
+            String entryText = PropertiesGenerator.generateEntry(
+                    bundle.getEntry(key), layout);
+            String expected = text.substring(
+                    offset, offset + layout.getLength(index));
+            assertEquals(name + ": " + key, //$NON-NLS-1$
+                    expected.length() == 0 ? null : expected, entryText);
+        }
+    }
+
+    /**
+     * Changes the system line separators of a text to <code>\n</code>.
+     * @param text the text
+     * @return the changed text
+     */
+    private static String toUnixLineBreaks(String text) {
+        return text.replace(
+                System.getProperty("line.separator"), "\n"); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+    /**
+     * Reads a file next to this class.
+     * @param path file path, relative to this class package
+     * @return file content
+     * @throws IOException problem reading the file
+     */
+    private String read(String path) throws IOException {
+        InputStream in = getClass().getResourceAsStream(path);
+        if (in == null) {
+            throw new IOException("Missing test file: " + path); //$NON-NLS-1$
+        }
+        try {
+            Reader reader = new InputStreamReader(in, UTF_8);
+            StringBuilder text = new StringBuilder();
+            char[] buf = new char[4096];
+            int count;
+            while ((count = reader.read(buf)) != -1) {
+                text.append(buf, 0, count);
+            }
+            return text.toString();
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Sets the preferences changed by these tests to their defaults.
+     */
+    private void resetPreferences() {
+        for (String preference : PREFERENCES) {
+            prefs.setToDefault(preference);
+        }
+    }
+}